@@ -4,15 +4,18 @@ import org.apache.ctakes.core.pipeline.PipeBitInfo;
 import org.apache.ctakes.typesystem.type.syntax.BaseToken;
 import org.apache.ctakes.typesystem.type.textsem.EventMention;
 import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.IntSummaryStatistics;
 
 /**
  * @author SPF , chip-nlp
@@ -32,76 +35,134 @@ public class AnnotationConfidencer extends JCasAnnotator_ImplBase {
             "CC", "DT", "EX", "IN", "MD", "PDT", "PP$", "PPZ", "PRP", "PRP$", "TO", "WDT", "WP", "WP$", "WRB"
     ) );
 
+    static public final String PARAM_CONFIDENCE_MODEL = "confidenceModel";
+    @ConfigurationParameter(
+            name = PARAM_CONFIDENCE_MODEL,
+            description = "Properties file of the linear confidence model, the original scoring if not given",
+            mandatory = false
+    )
+    private String confidenceModel;
+
+    private ConfidenceModel model;
+
+    @Override
+    public void initialize( final UimaContext context ) throws ResourceInitializationException {
+        super.initialize( context );
+        if ( confidenceModel == null || confidenceModel.isEmpty() ) {
+            model = ConfidenceModel.defaultModel();
+        } else {
+            try {
+                model = ConfidenceModel.load( confidenceModel );
+            } catch ( IOException ioE ) {
+                throw new ResourceInitializationException( ioE );
+            }
+        }
+        LOGGER.info( "Using confidence model " + model );
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void process(final JCas jcas) throws AnalysisEngineProcessException {
         LOGGER.info( "Setting annotation confidence scores ..." );
-        JCasUtil.indexCovered( jcas, EventMention.class, BaseToken.class )
-                .forEach( AnnotationConfidencer::setConfidence );
-    }
-
-    static private void setConfidence( final EventMention mention, final Collection<BaseToken> tokens ) {
-        final long posDeficit = getPosDeficit( tokens );
-        final long lengthDeficit = getTokenLengthDeficit( tokens );
-//        final long caseDeficit = getCaseDeficit( tokens );
-        final float score = Math.max( 1, 100 - posDeficit - lengthDeficit ) / 100f;
-        mention.setConfidence( score );
+        // one sweep over tokens and mentions, both in begin order.
+        // a mention covers tokens from the first that begins at or after the mention, up to its end.
+        final Collection<BaseToken> tokens = JCasUtil.select( jcas, BaseToken.class );
+        final int tokenCount = tokens.size();
+        final int[] begins = new int[ tokenCount ];
+        final int[] ends = new int[ tokenCount ];
+        final String[] partsOfSpeech = new String[ tokenCount ];
+        int index = 0;
+        for ( BaseToken token : tokens ) {
+            begins[ index ] = token.getBegin();
+            ends[ index ] = token.getEnd();
+            partsOfSpeech[ index ] = token.getPartOfSpeech();
+            index++;
+        }
+        final Collection<EventMention> mentions = JCasUtil.select( jcas, EventMention.class );
+        final EventMention[] scored = new EventMention[ mentions.size() ];
+        final double[][] features = new double[ ConfidenceModel.FEATURE_COUNT ][ mentions.size() ];
+        final boolean useCase = model.uses( ConfidenceModel.Feature.CASE_DEFICIT );
+        int scoredCount = 0;
+        int first = 0;
+        for ( EventMention mention : mentions ) {
+            final int begin = mention.getBegin();
+            final int end = mention.getEnd();
+            while ( first < tokenCount && begins[ first ] < begin ) {
+                first++;
+            }
+            int count = 0;
+            long sum = 0;
+            int max = Integer.MIN_VALUE;
+            int last = -1;
+            for ( int i = first; i < tokenCount && begins[ i ] <= end; i++ ) {
+                if ( ends[ i ] > end ) {
+                    continue;
+                }
+                final int length = ends[ i ] - begins[ i ];
+                count++;
+                sum += length;
+                max = Math.max( max, length );
+                last = i;
+            }
+            // as before, a mention without covered tokens is left alone
+            if ( count == 0 ) {
+                continue;
+            }
+            features[ ConfidenceModel.Feature.POS_DEFICIT.ordinal() ][ scoredCount ]
+                    = getPosDeficit( count, partsOfSpeech[ last ] );
+            features[ ConfidenceModel.Feature.LENGTH_DEFICIT.ordinal() ][ scoredCount ]
+                    = getTokenLengthDeficit( count, sum, max );
+            if ( useCase && count == 1 ) {
+                features[ ConfidenceModel.Feature.CASE_DEFICIT.ordinal() ][ scoredCount ]
+                        = getCaseDeficit( jcas.getDocumentText().substring( begins[ last ], ends[ last ] ) );
+            }
+            features[ ConfidenceModel.Feature.TOKEN_COUNT.ordinal() ][ scoredCount ] = count;
+            features[ ConfidenceModel.Feature.TERM_LENGTH.ordinal() ][ scoredCount ] = sum;
+            features[ ConfidenceModel.Feature.MAX_TOKEN_LENGTH.ordinal() ][ scoredCount ] = max;
+            scored[ scoredCount ] = mention;
+            scoredCount++;
+        }
+        // the whole document is scored at once
+        final float[] scores = model.score( features, scoredCount );
+        for ( int m = 0; m < scoredCount; m++ ) {
+            scored[ m ].setConfidence( scores[ m ] );
+        }
     }
 
     /**
-     * @param tokens -
+     * @param count        number of covered tokens.
+     * @param partOfSpeech part of speech of the last token.
      * @return 20 if the term is only one word and is of a part of speech that shouldn't represent a term.
      */
-    static private long getPosDeficit( final Collection<BaseToken> tokens ) {
-        if ( tokens.size() > 1 ) {
+    static private long getPosDeficit( final int count, final String partOfSpeech ) {
+        if ( count != 1 ) {
             return 0;
         }
-        return tokens.stream()
-                .map( BaseToken::getPartOfSpeech )
-                .anyMatch( BAD_POS::contains ) ? 20 : 0;
+        return BAD_POS.contains( partOfSpeech ) ? 20 : 0;
     }
 
     /**
-     *
-     * @param tokens -
+     * Token lengths are taken from their offsets, which is the length of their covered text.
+     * @param count number of covered tokens.
+     * @param sum   total length of the covered tokens.
+     * @param max   length of the longest covered token.
      * @return deficit based upon: total length of the term (non-whitespace), length of max token, number of tokens.
      */
-    static private long getTokenLengthDeficit( final Collection<BaseToken> tokens ) {
-        if ( tokens.size() >= 3 ) {
+    static private long getTokenLengthDeficit( final int count, final long sum, final int max ) {
+        if ( count >= 3 ) {
             return 0;
         }
-        final IntSummaryStatistics stats = tokens.stream()
-                .map( BaseToken::getCoveredText )
-                .mapToInt( String::length )
-                .summaryStatistics();
         // term length deficit: 3 = 15, 4 = 10, 5 = 5   = 5 * (6-length)
-        final long termLengthDeficit = Math.max( 0, 5*(7-stats.getSum()) );
+        final long termLengthDeficit = Math.max( 0, 5*(7-sum) );
         // token length deficit: 3 = 10, 4 = 5   = 5 * (5-length)
-        final long tokenLengthDeficit = Math.max( 0, 5*(5-stats.getMax()) );
+        final long tokenLengthDeficit = Math.max( 0, 5*(5-max) );
         // count deficit: 1 = 2, 2 = 1   = 3-count
-        final long tokenCountDeficit = Math.max( 0, 3-tokens.size() );
+        final long tokenCountDeficit = Math.max( 0, 3-count );
         return (termLengthDeficit + tokenLengthDeficit) * tokenCountDeficit;
     }
 
-    /**
-     * dPhe has a method that compares the covered text to the actual dictionary entry text.  This AE can't do that.
-     * @param tokens -
-     * @return -
-     */
-    static private long getCaseDeficit( final Collection<BaseToken> tokens ) {
-        if ( tokens.size() > 1 ) {
-            return 0;
-        }
-        return tokens.stream()
-                .map( BaseToken::getCoveredText )
-                .map( AnnotationConfidencer::getCaseDeficit )
-                .findFirst()
-                .orElse(0L );
-    }
-
-
     /**
      * dPhe has a method that compares the covered text to the actual dictionary entry text.  This AE can't do that.
      * @param token -
@@ -0,0 +1,159 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.core.resource.FileLocator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Linear model that scores the confidence of event mentions from a vector of {@link Feature}s.
+ * <pre>
+ *    confidence = max( minimum , bias + sum of weight.FEATURE * FEATURE ) / divisor
+ * </pre>
+ * The default model is the original AnnotationConfidencer arithmetic.
+ * A model file is a properties file with any of the keys bias, minimum, divisor and weight.FEATURE,
+ * keys that are absent keep their default value, e.g.
+ * <pre>
+ *    bias=100
+ *    weight.POS_DEFICIT=-1.5
+ *    weight.CASE_DEFICIT=-1
+ * </pre>
+ *
+ * @author chip-nlp
+ */
+final public class ConfidenceModel {
+
+    public enum Feature {
+        /** 20 if the term is one token of a part of speech that shouldn't represent a term */
+        POS_DEFICIT,
+        /** deficit for short terms with short tokens, 0 for 3 or more tokens */
+        LENGTH_DEFICIT,
+        /** deficit for a short lone token in lower case */
+        CASE_DEFICIT,
+        TOKEN_COUNT,
+        /** total length of the tokens */
+        TERM_LENGTH,
+        MAX_TOKEN_LENGTH
+    }
+
+    static public final int FEATURE_COUNT = Feature.values().length;
+
+    private final double _bias;
+    private final double _minimum;
+    private final double _divisor;
+    private final double[] _weights;
+
+    /**
+     * @return the original scoring : 100 minus the pos and length deficits, at least 1, as a fraction of 100.
+     */
+    static public ConfidenceModel defaultModel() {
+        final double[] weights = new double[ FEATURE_COUNT ];
+        weights[ Feature.POS_DEFICIT.ordinal() ] = -1;
+        weights[ Feature.LENGTH_DEFICIT.ordinal() ] = -1;
+        return new ConfidenceModel( 100, 1, 100, weights );
+    }
+
+    /**
+     * @param path properties file of the model, found with the FileLocator.
+     * @return the default model with the values in the file.
+     * @throws IOException if the file cannot be read or has a bad key or value.
+     */
+    static public ConfidenceModel load( final String path ) throws IOException {
+        final Properties properties = new Properties();
+        try ( InputStream stream = FileLocator.getAsStream( path ) ) {
+            properties.load( new InputStreamReader( stream, StandardCharsets.UTF_8 ) );
+        }
+        final ConfidenceModel defaults = defaultModel();
+        final double[] weights = defaults._weights.clone();
+        for ( String key : properties.stringPropertyNames() ) {
+            if ( key.startsWith( "weight." ) ) {
+                final Feature feature;
+                try {
+                    feature = Feature.valueOf( key.substring( "weight.".length() ) );
+                } catch ( IllegalArgumentException iaE ) {
+                    throw new IOException( "Unknown confidence feature " + key + " in " + path );
+                }
+                weights[ feature.ordinal() ] = getDouble( properties, key, path, 0 );
+            } else if ( !key.equals( "bias" ) && !key.equals( "minimum" ) && !key.equals( "divisor" ) ) {
+                throw new IOException( "Unknown confidence model key " + key + " in " + path );
+            }
+        }
+        return new ConfidenceModel( getDouble( properties, "bias", path, defaults._bias ),
+                                    getDouble( properties, "minimum", path, defaults._minimum ),
+                                    getDouble( properties, "divisor", path, defaults._divisor ),
+                                    weights );
+    }
+
+    static private double getDouble( final Properties properties, final String key, final String path,
+                                     final double defaultValue ) throws IOException {
+        final String value = properties.getProperty( key );
+        if ( value == null ) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble( value.trim() );
+        } catch ( NumberFormatException nfE ) {
+            throw new IOException( "Could not parse " + key + " " + value + " in " + path );
+        }
+    }
+
+    private ConfidenceModel( final double bias, final double minimum, final double divisor, final double[] weights ) {
+        _bias = bias;
+        _minimum = minimum;
+        _divisor = divisor;
+        _weights = weights;
+    }
+
+    /**
+     * @return true if the feature has a weight, so features that are costly to compute can be skipped.
+     */
+    public boolean uses( final Feature feature ) {
+        return _weights[ feature.ordinal() ] != 0;
+    }
+
+    /**
+     * Scores a batch of mentions.
+     *
+     * @param features feature-major vectors, features[ feature.ordinal() ][ mention ].
+     * @param count    number of mentions in the batch.
+     * @return the confidence of each mention.
+     */
+    public float[] score( final double[][] features, final int count ) {
+        final double[] sums = new double[ count ];
+        Arrays.fill( sums, _bias );
+        for ( int f = 0; f < FEATURE_COUNT; f++ ) {
+            final double weight = _weights[ f ];
+            if ( weight == 0 ) {
+                continue;
+            }
+            final double[] values = features[ f ];
+            for ( int m = 0; m < count; m++ ) {
+                sums[ m ] += weight * values[ m ];
+            }
+        }
+        final float[] scores = new float[ count ];
+        final float divisor = (float)_divisor;
+        for ( int m = 0; m < count; m++ ) {
+            scores[ m ] = (float)Math.max( _minimum, sums[ m ] ) / divisor;
+        }
+        return scores;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder( "bias " ).append( _bias )
+                                                              .append( " minimum " ).append( _minimum )
+                                                              .append( " divisor " ).append( _divisor );
+        for ( Feature feature : Feature.values() ) {
+            if ( uses( feature ) ) {
+                sb.append( ' ' ).append( feature ).append( ' ' ).append( _weights[ feature.ordinal() ] );
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,80 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.core.pipeline.PipeBitInfo;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Removes event mentions scored below a confidence by the {@link AnnotationConfidencer}
+ * and keeps the {@link RelevanceGate}'s record of relevant events to the ones that are left.
+ * Run before the TimeMentionNormalizer so that it and the Python side never see them.
+ * Time mentions are left alone, the TimeMentionNormalizer's windowRadius skips normalizing those far from any event.
+ *
+ * @author chip-nlp
+ */
+@PipeBitInfo(
+        name = "ConfidencePruner ( TxTimelines )",
+        description = " Removes low confidence events ( to be called after AnnotationConfidencer ) ",
+        dependencies = { PipeBitInfo.TypeProduct.EVENT },
+        products = { PipeBitInfo.TypeProduct.EVENT }
+)
+public class ConfidencePruner extends org.apache.uima.fit.component.JCasAnnotator_ImplBase {
+    final static private Logger LOGGER = Logger.getLogger( "ConfidencePruner" );
+
+    public static final String PARAM_MINIMUM_CONFIDENCE = "minimumConfidence";
+
+    @ConfigurationParameter(
+            name = PARAM_MINIMUM_CONFIDENCE,
+            description = "Events with a confidence below this are removed, 0 to keep every event",
+            defaultValue = "0",
+            mandatory = false
+    )
+    private float minimumConfidence;
+
+    // shared by replicas of the pruner
+    static private final AtomicLong EVENTS_REMOVED = new AtomicLong();
+
+    @Override
+    public void initialize( UimaContext context ) throws ResourceInitializationException {
+        super.initialize( context );
+        LOGGER.info( "Removing events below confidence " + this.minimumConfidence );
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException {
+        super.collectionProcessComplete();
+        LOGGER.info( "Removed " + EVENTS_REMOVED.get() + " events" );
+    }
+
+    @Override
+    public void process( JCas jCas ) throws AnalysisEngineProcessException {
+        final List<EventMention> lowConfidence = JCasUtil.select( jCas, EventMention.class )
+            .stream()
+            .filter( eventMention -> eventMention.getConfidence() < this.minimumConfidence )
+            .collect( Collectors.toList() );
+        if ( lowConfidence.isEmpty() ) {
+            return;
+        }
+        lowConfidence.forEach( EventMention::removeFromIndexes );
+        EVENTS_REMOVED.addAndGet( lowConfidence.size() );
+        if ( RelevantEvents.isGated( jCas ) ) {
+            // keep the gate's record to the events that are left
+            RelevantEvents.record( jCas, RelevantEvents.get( jCas )
+                                                       .stream()
+                                                       .filter( eventMention -> eventMention.getConfidence() >= this.minimumConfidence )
+                                                       .collect( Collectors.toList() ) );
+        }
+        LOGGER.debug( "Removed " + lowConfidence.size() + " events" );
+    }
+
+}
@@ -22,7 +22,8 @@ import java.util.Optional;
 
 public class DCTAnnotator extends org.apache.uima.fit.component.JCasAnnotator_ImplBase {
     final static private Logger LOGGER = Logger.getLogger( "DCTAnnotator" );
-    final static private DocTimeApproximator _approximator = new DocTimeApproximator();
+    // one per replica, the approximator is not meant to be shared between threads
+    private final DocTimeApproximator _approximator = new DocTimeApproximator();
     @Override
     public void initialize( UimaContext context ) throws ResourceInitializationException {
         super.initialize( context );
@@ -31,6 +32,9 @@ public class DCTAnnotator extends org.apache.uima.fit.component.JCasAnnotator_Im
 
     @Override
     public void process( JCas jCas ) throws AnalysisEngineProcessException {
+        if ( !RelevantEvents.isRelevant( jCas ) ) {
+            return;
+        }
         // could use some refactoring
         final SourceData sourceData = SourceMetadataUtil.getOrCreateSourceData( jCas );
 
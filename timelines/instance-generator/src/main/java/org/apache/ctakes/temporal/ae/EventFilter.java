@@ -1,7 +1,6 @@
 package org.apache.ctakes.temporal.ae;
 
 import org.apache.ctakes.core.pipeline.PipeBitInfo;
-import org.apache.ctakes.core.resource.FileLocator;
 import org.apache.ctakes.typesystem.type.constants.CONST;
 import org.apache.ctakes.typesystem.type.textsem.EventMention;
 import org.apache.ctakes.typesystem.type.textsem.IdentifiedAnnotation;
@@ -13,14 +12,8 @@ import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
 import java.util.Optional;
-import java.util.Set;
 import java.util.Collection;
 import java.util.stream.Collectors;
 
@@ -43,22 +36,60 @@ public class EventFilter extends org.apache.uima.fit.component.JCasAnnotator_Imp
     )
     private String filterList;
 
-    private Set<String> terms;
+    public static final String PARAM_MATCH_MODE = "matchMode";
+
+    @ConfigurationParameter(
+            name = PARAM_MATCH_MODE,
+            description = "How a term must match the event text : exact, prefix or contains",
+            defaultValue = "exact",
+            mandatory = false
+    )
+    private String matchMode;
+
+    public static final String PARAM_RELOAD_SECONDS = "reloadSeconds";
+
+    @ConfigurationParameter(
+            name = PARAM_RELOAD_SECONDS,
+            description = "Seconds between checks for changes to the filter list file, 0 to never reload",
+            defaultValue = "0",
+            mandatory = false
+    )
+    private int reloadSeconds;
+
+    private FilterListRegistry registry;
+    private TermMatcher.Mode mode;
 
     @Override
     public void initialize( UimaContext context ) throws ResourceInitializationException {
         super.initialize( context );
-        this.terms = getTerms();
+        try {
+            this.mode = TermMatcher.Mode.valueOf( this.matchMode.trim().toUpperCase() );
+        } catch ( IllegalArgumentException iaE ) {
+            throw new ResourceInitializationException( iaE );
+        }
+        if ( filterList == null || filterList.isEmpty() ) {
+            //throw new RuntimeException( "Missing Filter List" );
+            LOGGER.info( "Missing Filter List, Using Empty List" );
+        }
+        try {
+            this.registry = FilterListRegistry.get( filterList );
+        } catch ( IOException e ) {
+            throw new ResourceInitializationException( e );
+        }
+        LOGGER.info( "Filtering events by " + this.registry.current( 0 ).getMatcher().size()
+                     + " terms, matching " + this.mode );
     }
 
     @Override
     public void process( JCas jCas ) throws AnalysisEngineProcessException {
+        // the whole document is filtered by the same version of the list
+        final TermMatcher matcher = this.registry.current( this.reloadSeconds ).getMatcher();
         try {
             Collection<EventMention> removals = JCasUtil.select( jCas, EventMention.class )
                 .stream()
                 // TODO filter by meds / TUI T121
                 // or actually is it TUI T061 ?
-                .filter( this::toRemove )
+                .filter( eventMention -> toRemove( eventMention, matcher ) )
                 .collect( Collectors.toList() );
 
                 removals.forEach( EventMention::removeFromIndexes );
@@ -67,7 +98,7 @@ public class EventFilter extends org.apache.uima.fit.component.JCasAnnotator_Imp
         }
     }
 
-    private boolean toRemove( EventMention eventMention ){
+    private boolean toRemove( EventMention eventMention, TermMatcher matcher ){
 
         // for preserving my own sanity
         // https://winterbe.com/posts/2015/03/15/avoid-null-checks-in-java/
@@ -92,44 +123,17 @@ public class EventFilter extends org.apache.uima.fit.component.JCasAnnotator_Imp
 
         // boolean isUncertain = certainty == CONST.NE_UNCERTAINTY_PRESENT;
 
-        // this is very very brute force, it behooves us to check
-        // how the dictionary lookup works since there are ways for even
-        // fuzzy matching to be more efficient than this but for
-        // low demand and small exclusion lists it's not _too_ much of a trade off
+        // one pass over the event text whatever the number of terms
         boolean isFilterMatch = false;
-        if ( !this.terms.isEmpty() ) {
-            isFilterMatch = this.terms.stream()
-                .anyMatch(
-                          term -> eventMention
-                          .getCoveredText()
-                          .trim()
-                          .toLowerCase()
-                          // .contains(term)
-                          .equals( term )
-                          );
+        if ( matcher.size() > 0 ) {
+            isFilterMatch = matcher.matches(
+                                                 eventMention
+                                                 .getCoveredText()
+                                                 .trim()
+                                                 .toLowerCase(),
+                                                 this.mode
+                                                 );
         }
         return isFilterMatch; // || isUncertain; //isHypothetical;
     }
-
-    private Set<String> getTerms() {
-        if ( filterList != null && !filterList.isEmpty() ) {
-            try ( InputStream descriptorStream = FileLocator.getAsStream( filterList ) ) {
-                return new BufferedReader(
-                                          new InputStreamReader(
-                                                                descriptorStream,
-                                                                StandardCharsets.UTF_8
-                                                                )
-                                          ).lines()
-                    .map( String::toLowerCase )
-                    .map( String::trim )
-                    .collect( Collectors.toSet() );
-            } catch ( IOException e ) {
-                throw new RuntimeException( e );
-            }
-        } else {
-            //throw new RuntimeException( "Missing Filter List" );
-            LOGGER.info( "Missing Filter List, Using Empty List" );
-            return new HashSet<>();
-        }
-    }
 }
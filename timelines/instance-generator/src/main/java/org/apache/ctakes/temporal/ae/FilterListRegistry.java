@@ -0,0 +1,145 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.core.resource.FileLocator;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Process-wide compiled filter lists, one per list path, shared by every {@link EventFilter}.
+ * A list is compiled once into an immutable, versioned {@link Snapshot}.
+ * When the list is a file on disk it can be reloaded after it changes:
+ * the new snapshot is compiled off to the side and swapped in atomically,
+ * documents already being filtered keep the snapshot they started with.
+ *
+ * @author chip-nlp
+ */
+final public class FilterListRegistry {
+
+    static private final Logger LOGGER = Logger.getLogger( "FilterListRegistry" );
+
+    static private final Map<String, FilterListRegistry> REGISTRIES = new HashMap<>();
+    static private final FilterListRegistry EMPTY
+            = new FilterListRegistry( "", null, new Snapshot( 0, new TermMatcher( Collections.emptySet() ), 0 ) );
+
+    private final String _filterList;
+    // null if the list is not a file on disk, e.g. a resource in a jar
+    private final File _file;
+    private final AtomicReference<Snapshot> _current;
+    private final AtomicLong _nextCheckMillis = new AtomicLong();
+
+    /**
+     * @param filterList path of a newline separated file of terms, null or empty for no terms.
+     * @return the registry for the list, shared with every other caller in this process.
+     * @throws IOException if the list cannot be read.
+     */
+    static public FilterListRegistry get( final String filterList ) throws IOException {
+        if ( filterList == null || filterList.isEmpty() ) {
+            return EMPTY;
+        }
+        synchronized ( REGISTRIES ) {
+            FilterListRegistry registry = REGISTRIES.get( filterList );
+            if ( registry == null ) {
+                final File file = FileLocator.getFileQuiet( filterList );
+                final long lastModified = file == null ? 0 : file.lastModified();
+                registry = new FilterListRegistry( filterList, file,
+                                                   new Snapshot( 1, compile( filterList ), lastModified ) );
+                REGISTRIES.put( filterList, registry );
+            }
+            return registry;
+        }
+    }
+
+    private FilterListRegistry( final String filterList, final File file, final Snapshot snapshot ) {
+        _filterList = filterList;
+        _file = file;
+        _current = new AtomicReference<>( snapshot );
+    }
+
+    /**
+     * @param reloadSeconds seconds between checks for a changed file, 0 to never reload.
+     * @return the current snapshot, reloaded first if the file has changed and a check is due.
+     */
+    public Snapshot current( final int reloadSeconds ) {
+        final Snapshot current = _current.get();
+        if ( reloadSeconds <= 0 || _file == null ) {
+            return current;
+        }
+        final long now = System.currentTimeMillis();
+        final long nextCheck = _nextCheckMillis.get();
+        // only the caller that claims the check looks at the file, everybody else carries on with the current list
+        if ( now < nextCheck || !_nextCheckMillis.compareAndSet( nextCheck, now + reloadSeconds * 1000L ) ) {
+            return current;
+        }
+        final long lastModified = _file.lastModified();
+        if ( lastModified == current._lastModified ) {
+            return current;
+        }
+        try {
+            final Snapshot reloaded = new Snapshot( current._version + 1, compile( _filterList ), lastModified );
+            _current.set( reloaded );
+            LOGGER.info( "Reloaded " + _filterList + " version " + reloaded._version
+                         + " with " + reloaded._matcher.size() + " terms" );
+            return reloaded;
+        } catch ( IOException ioE ) {
+            LOGGER.warn( "Could not reload " + _filterList + ", keeping version " + current._version
+                         + " : " + ioE.getMessage() );
+            return current;
+        }
+    }
+
+    static private TermMatcher compile( final String filterList ) throws IOException {
+        try ( InputStream descriptorStream = FileLocator.getAsStream( filterList ) ) {
+            final Set<String> terms = new BufferedReader(
+                                                         new InputStreamReader(
+                                                                               descriptorStream,
+                                                                               StandardCharsets.UTF_8
+                                                                               )
+                                                         ).lines()
+                .map( String::toLowerCase )
+                .map( String::trim )
+                .collect( Collectors.toSet() );
+            return new TermMatcher( terms );
+        }
+    }
+
+
+    /**
+     * An immutable compiled version of a filter list.
+     */
+    static public final class Snapshot {
+        private final int _version;
+        private final TermMatcher _matcher;
+        private final long _lastModified;
+
+        private Snapshot( final int version, final TermMatcher matcher, final long lastModified ) {
+            _version = version;
+            _matcher = matcher;
+            _lastModified = lastModified;
+        }
+
+        /**
+         * @return 1 for the list as first loaded, incremented with every reload.
+         */
+        public int getVersion() {
+            return _version;
+        }
+
+        public TermMatcher getMatcher() {
+            return _matcher;
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.core.pipeline.PipeBitInfo;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+
+/**
+ * The BackwardsTimeAnnotator, skipping documents the {@link RelevanceGate} found no relevant events in.
+ * Takes the same parameters, e.g. classifierJarPath.
+ *
+ * @author chip-nlp
+ */
+@PipeBitInfo(
+        name = "GatedBackwardsTimeAnnotator ( TxTimelines )",
+        description = " Annotates timexes in notes with relevant events ( to be called after RelevanceGate ) ",
+        dependencies = { PipeBitInfo.TypeProduct.SECTION, PipeBitInfo.TypeProduct.BASE_TOKEN },
+        products = { PipeBitInfo.TypeProduct.TIMEX }
+)
+public class GatedBackwardsTimeAnnotator extends BackwardsTimeAnnotator {
+
+    @Override
+    public void process( JCas jCas ) throws AnalysisEngineProcessException {
+        if ( !RelevantEvents.isRelevant( jCas ) ) {
+            return;
+        }
+        super.process( jCas );
+    }
+
+}
@@ -0,0 +1,96 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.core.pipeline.PipeBitInfo;
+import org.apache.ctakes.pbj.ae.PbjJmsSender;
+import org.apache.ctakes.typesystem.type.structured.DocumentID;
+import org.apache.ctakes.typesystem.type.structured.DocumentIdPrefix;
+import org.apache.ctakes.typesystem.type.structured.DocumentPath;
+import org.apache.ctakes.typesystem.type.structured.Metadata;
+import org.apache.log4j.Logger;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.CasCreationUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The PbjJmsSender, only sending the whole CAS of notes the {@link RelevanceGate} found relevant events in.
+ * Any other note is sent as a stub with no text, its document id, path and metadata,
+ * and an empty {@link RelevantEvents} record, so the Python side can still account for it.
+ * Takes the same parameters, e.g. SendQueue.
+ * Logs how many notes were sent whole and as stubs, with the UTF-8 bytes of their document text.
+ * Those are not the sizes of the serialized CASes, measuring those would mean serializing every note twice.
+ *
+ * @author chip-nlp
+ */
+@PipeBitInfo(
+        name = "GatedPbjJmsSender ( TxTimelines )",
+        description = " Sends notes with relevant events to an Artemis queue, and a stub for every other note ( to be called after RelevanceGate ) ",
+        role = PipeBitInfo.Role.ANNOTATOR
+)
+public class GatedPbjJmsSender extends PbjJmsSender {
+    final static private Logger LOGGER = Logger.getLogger( "GatedPbjJmsSender" );
+
+    static private final List<Class<? extends TOP>> STUB_TYPES = Collections.unmodifiableList( Arrays.asList(
+            DocumentID.class, DocumentIdPrefix.class, DocumentPath.class, Metadata.class ) );
+
+    // reset and reused for every stub
+    private JCas stub;
+    private long forwardedNotes;
+    private long forwardedTextBytes;
+    private long stubbedNotes;
+    private long stubbedTextBytes;
+
+    @Override
+    public void process( JCas jCas ) throws AnalysisEngineProcessException {
+        final String text = jCas.getDocumentText();
+        final long textBytes = text == null ? 0 : text.getBytes( StandardCharsets.UTF_8 ).length;
+        if ( RelevantEvents.isRelevant( jCas ) ) {
+            this.forwardedNotes++;
+            this.forwardedTextBytes += textBytes;
+            super.process( jCas );
+            return;
+        }
+        this.stubbedNotes++;
+        this.stubbedTextBytes += textBytes;
+        super.process( createStub( jCas ) );
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException {
+        LOGGER.info( "Sent " + this.forwardedNotes + " whole notes with " + this.forwardedTextBytes
+                     + " bytes of document text, " + this.stubbedNotes + " stubs in place of notes with "
+                     + this.stubbedTextBytes + " bytes of document text" );
+        super.collectionProcessComplete();
+    }
+
+    private JCas createStub( final JCas jCas ) throws AnalysisEngineProcessException {
+        try {
+            if ( this.stub == null ) {
+                this.stub = CasCreationUtils.createCas( jCas.getTypeSystem(), null, null, null ).getJCas();
+            } else {
+                this.stub.reset();
+            }
+            this.stub.setDocumentText( "" );
+            final CasCopier copier = new CasCopier( jCas.getCas(), this.stub.getCas() );
+            for ( Class<? extends TOP> type : STUB_TYPES ) {
+                for ( TOP annotation : JCasUtil.select( jCas, type ) ) {
+                    this.stub.getCas().addFsToIndexes( copier.copyFs( annotation ) );
+                }
+            }
+            RelevantEvents.record( this.stub, Collections.emptyList() );
+            return this.stub;
+        } catch ( ResourceInitializationException | CASException casE ) {
+            throw new AnalysisEngineProcessException( casE );
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.ctakes.core.pipeline.PipeBitInfo;
+import org.apache.ctakes.typesystem.type.structured.DocumentPath;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the events with relevant TUIs once and records them as {@link RelevantEvents}.
+ * The temporal annotators after it skip documents without relevant events.
+ *
+ * @author chip-nlp
+ */
+@PipeBitInfo(
+        name = "RelevanceGate ( TxTimelines )",
+        description = " Records the events with the provided TUIs so later annotators can skip notes without any ( to be called after the dictionary lookup ) ",
+        dependencies = { PipeBitInfo.TypeProduct.EVENT }
+)
+public class RelevanceGate extends org.apache.uima.fit.component.JCasAnnotator_ImplBase {
+    final static private Logger LOGGER = Logger.getLogger( "RelevanceGate" );
+
+    public static final String PARAM_TUIS = "tuis";
+
+    @ConfigurationParameter(
+            name = PARAM_TUIS,
+            description = "Comma separated TUIs of the relevant events, empty for every event",
+            defaultValue = "T061",
+            mandatory = false
+    )
+    private String tuis;
+
+    private Set<String> tuiSet;
+
+    @Override
+    public void initialize( UimaContext context ) throws ResourceInitializationException {
+        super.initialize( context );
+        this.tuiSet = Arrays.stream( this.tuis.split( "," ) )
+                            .map( String::trim )
+                            .filter( tui -> !tui.isEmpty() )
+                            .map( String::toUpperCase )
+                            .collect( Collectors.toCollection( HashSet::new ) );
+        LOGGER.info( "Relevant events have TUIs " + this.tuiSet );
+    }
+
+    @Override
+    public void process( JCas jCas ) throws AnalysisEngineProcessException {
+        final List<EventMention> relevantEvents = JCasUtil.select( jCas, EventMention.class )
+            .stream()
+            .filter( eventMention -> RelevantEvents.hasTui( eventMention, this.tuiSet ) )
+            .collect( Collectors.toList() );
+        RelevantEvents.record( jCas, relevantEvents );
+        if ( relevantEvents.isEmpty() ) {
+            final String fileName = JCasUtil.select( jCas, DocumentPath.class )
+                .stream()
+                .findFirst()
+                .map( documentPath -> FilenameUtils.getBaseName( documentPath.getDocumentPath() ) )
+                .orElse( "" );
+            LOGGER.info( fileName + " : no events with the TUIs " + this.tuiSet + " skipping the temporal annotators" );
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.core.util.annotation.OntologyConceptUtil;
+import org.apache.ctakes.typesystem.type.refsem.UmlsConcept;
+import org.apache.ctakes.typesystem.type.relation.CollectionTextRelation;
+import org.apache.ctakes.typesystem.type.relation.RelationArgument;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.uima.fit.util.FSCollectionFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.FSList;
+import org.apache.uima.jcas.cas.NonEmptyFSList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The events with relevant TUIs found by the {@link RelevanceGate}, kept in the CAS as a CollectionTextRelation
+ * so that later annotators, the writers and the Python side do not look at the TUIs again.
+ * A CAS that has not been through the gate is always relevant.
+ *
+ * @author chip-nlp
+ */
+final public class RelevantEvents {
+
+    static public final String CATEGORY = "TxTimelinesRelevantEvents";
+
+    private RelevantEvents() {
+    }
+
+    /**
+     * @param eventMention an event.
+     * @param tuis         relevant TUIs, empty for every event.
+     * @return true if the event has a relevant TUI.
+     */
+    static public boolean hasTui( final EventMention eventMention, final Set<String> tuis ) {
+        if ( tuis.isEmpty() ) {
+            return true;
+        }
+        return OntologyConceptUtil.getUmlsConcepts( eventMention )
+                                  .stream()
+                                  .map( UmlsConcept::getTui )
+                                  .anyMatch( tuis::contains );
+    }
+
+    /**
+     * Replaces any relevant events already recorded in the CAS.
+     *
+     * @param jCas           document.
+     * @param relevantEvents events with relevant TUIs, may be empty.
+     */
+    static public void record( final JCas jCas, final Collection<EventMention> relevantEvents ) {
+        final CollectionTextRelation previous = getRelation( jCas );
+        if ( previous != null ) {
+            previous.removeFromIndexes();
+        }
+        final List<RelationArgument> arguments = new ArrayList<>( relevantEvents.size() );
+        for ( EventMention eventMention : relevantEvents ) {
+            final RelationArgument argument = new RelationArgument( jCas );
+            argument.setArgument( eventMention );
+            argument.setRole( "relevant" );
+            arguments.add( argument );
+        }
+        final CollectionTextRelation relation = new CollectionTextRelation( jCas );
+        relation.setCategory( CATEGORY );
+        relation.setMembers( FSCollectionFactory.createFSList( jCas, arguments ) );
+        relation.addToIndexes();
+    }
+
+    /**
+     * @param jCas document.
+     * @return true if the gate has been run over the document.
+     */
+    static public boolean isGated( final JCas jCas ) {
+        return getRelation( jCas ) != null;
+    }
+
+    /**
+     * @param jCas document.
+     * @return false only if the gate found no relevant events.
+     */
+    static public boolean isRelevant( final JCas jCas ) {
+        final CollectionTextRelation relation = getRelation( jCas );
+        return relation == null || relation.getMembers() instanceof NonEmptyFSList;
+    }
+
+    /**
+     * @param jCas document.
+     * @return the recorded relevant events, empty if the gate has not been run.
+     */
+    static public List<EventMention> get( final JCas jCas ) {
+        final CollectionTextRelation relation = getRelation( jCas );
+        if ( relation == null ) {
+            return Collections.emptyList();
+        }
+        final FSList<RelationArgument> members = relation.getMembers();
+        return FSCollectionFactory.create( members, RelationArgument.class )
+                                  .stream()
+                                  .map( RelationArgument::getArgument )
+                                  .filter( EventMention.class::isInstance )
+                                  .map( EventMention.class::cast )
+                                  .collect( Collectors.toList() );
+    }
+
+    static private CollectionTextRelation getRelation( final JCas jCas ) {
+        for ( CollectionTextRelation relation : JCasUtil.select( jCas, CollectionTextRelation.class ) ) {
+            if ( CATEGORY.equals( relation.getCategory() ) ) {
+                return relation;
+            }
+        }
+        return null;
+    }
+
+}
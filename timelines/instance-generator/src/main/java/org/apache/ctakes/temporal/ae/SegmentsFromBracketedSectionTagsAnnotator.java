@@ -10,7 +10,7 @@ import java.util.regex.Pattern;
 
 // from Sean or Tim originally, I think it's still actually in ctakes temporal somewhere but idk
 public class SegmentsFromBracketedSectionTagsAnnotator extends JCasAnnotator_ImplBase {
-    private static Pattern SECTION_PATTERN = Pattern.compile(
+    private static final Pattern SECTION_PATTERN = Pattern.compile(
             "(\\[start section id=\"?(.*?)\"?\\]).*?(\\[end section id=\"?(.*?)\"?\\])",
             Pattern.DOTALL );
 
@@ -0,0 +1,195 @@
+package org.apache.ctakes.temporal.ae;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a fixed set of terms.
+ * Matching a text takes time linear in the text, whatever the number of terms.
+ * The trie is compiled into flat arrays, the edges of each state sorted by character.
+ *
+ * @author chip-nlp
+ */
+final public class TermMatcher {
+
+    public enum Mode {
+        /** the whole text is a term */
+        EXACT,
+        /** the text starts with a term */
+        PREFIX,
+        /** a term occurs anywhere in the text */
+        CONTAINS
+    }
+
+    static private final int ROOT = 0;
+    static private final int NONE = -1;
+
+    // edges of state s are _labels / _targets [ _edgeStart[ s ] , _edgeStart[ s + 1 ] )
+    private final int[] _edgeStart;
+    private final char[] _labels;
+    private final int[] _targets;
+    private final int[] _failure;
+    // the state ends a term
+    private final boolean[] _terminal;
+    // the state or a state on its failure chain ends a term
+    private final boolean[] _output;
+    private final int _termCount;
+
+    /**
+     * @param terms terms to match, empty terms are ignored.
+     */
+    public TermMatcher( final Collection<String> terms ) {
+        final List<Map<Character, Integer>> trie = new ArrayList<>();
+        final List<Boolean> terminal = new ArrayList<>();
+        trie.add( new TreeMap<>() );
+        terminal.add( false );
+        int termCount = 0;
+        for ( String term : terms ) {
+            if ( term.isEmpty() ) {
+                continue;
+            }
+            int state = ROOT;
+            for ( int i = 0; i < term.length(); i++ ) {
+                final Integer next = trie.get( state ).get( term.charAt( i ) );
+                if ( next == null ) {
+                    trie.get( state ).put( term.charAt( i ), trie.size() );
+                    state = trie.size();
+                    trie.add( new TreeMap<>() );
+                    terminal.add( false );
+                } else {
+                    state = next;
+                }
+            }
+            if ( !terminal.get( state ) ) {
+                terminal.set( state, true );
+                termCount++;
+            }
+        }
+        _termCount = termCount;
+
+        final int stateCount = trie.size();
+        _edgeStart = new int[ stateCount + 1 ];
+        _labels = new char[ stateCount - 1 ];
+        _targets = new int[ stateCount - 1 ];
+        _terminal = new boolean[ stateCount ];
+        int edge = 0;
+        for ( int state = 0; state < stateCount; state++ ) {
+            _edgeStart[ state ] = edge;
+            _terminal[ state ] = terminal.get( state );
+            for ( Map.Entry<Character, Integer> child : trie.get( state ).entrySet() ) {
+                _labels[ edge ] = child.getKey();
+                _targets[ edge ] = child.getValue();
+                edge++;
+            }
+        }
+        _edgeStart[ stateCount ] = edge;
+
+        // failure links breadth first, so a state's failure is set before its children need it
+        _failure = new int[ stateCount ];
+        _output = new boolean[ stateCount ];
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for ( int e = _edgeStart[ ROOT ]; e < _edgeStart[ ROOT + 1 ]; e++ ) {
+            _failure[ _targets[ e ] ] = ROOT;
+            _output[ _targets[ e ] ] = _terminal[ _targets[ e ] ];
+            queue.add( _targets[ e ] );
+        }
+        while ( !queue.isEmpty() ) {
+            final int state = queue.poll();
+            for ( int e = _edgeStart[ state ]; e < _edgeStart[ state + 1 ]; e++ ) {
+                final int child = _targets[ e ];
+                int fallback = _failure[ state ];
+                int next = step( fallback, _labels[ e ] );
+                while ( next == NONE && fallback != ROOT ) {
+                    fallback = _failure[ fallback ];
+                    next = step( fallback, _labels[ e ] );
+                }
+                _failure[ child ] = next == NONE ? ROOT : next;
+                _output[ child ] = _terminal[ child ] || _output[ _failure[ child ] ];
+                queue.add( child );
+            }
+        }
+    }
+
+    /**
+     * @return number of distinct terms.
+     */
+    public int size() {
+        return _termCount;
+    }
+
+    /**
+     * @param text text to match, already normalized as the terms were.
+     * @param mode how a term must match the text.
+     * @return true if a term matches.
+     */
+    public boolean matches( final CharSequence text, final Mode mode ) {
+        switch ( mode ) {
+            case EXACT:
+                return walk( text, false );
+            case PREFIX:
+                return walk( text, true );
+            default:
+                return contains( text );
+        }
+    }
+
+    /**
+     * Follows trie edges from the root without failure links.
+     */
+    private boolean walk( final CharSequence text, final boolean prefix ) {
+        int state = ROOT;
+        for ( int i = 0; i < text.length(); i++ ) {
+            if ( prefix && _terminal[ state ] ) {
+                return true;
+            }
+            state = step( state, text.charAt( i ) );
+            if ( state == NONE ) {
+                return false;
+            }
+        }
+        return _terminal[ state ];
+    }
+
+    private boolean contains( final CharSequence text ) {
+        int state = ROOT;
+        for ( int i = 0; i < text.length(); i++ ) {
+            final char c = text.charAt( i );
+            int next = step( state, c );
+            while ( next == NONE && state != ROOT ) {
+                state = _failure[ state ];
+                next = step( state, c );
+            }
+            state = next == NONE ? ROOT : next;
+            if ( _output[ state ] ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the state reached from a state on a character, or NONE if there is no such edge.
+     */
+    private int step( final int state, final char c ) {
+        int low = _edgeStart[ state ];
+        int high = _edgeStart[ state + 1 ] - 1;
+        while ( low <= high ) {
+            final int middle = ( low + high ) >>> 1;
+            final char label = _labels[ middle ];
+            if ( label < c ) {
+                low = middle + 1;
+            } else if ( label > c ) {
+                high = middle - 1;
+            } else {
+                return _targets[ middle ];
+            }
+        }
+        return NONE;
+    }
+
+}
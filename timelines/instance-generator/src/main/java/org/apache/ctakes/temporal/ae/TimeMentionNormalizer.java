@@ -5,12 +5,10 @@ import org.apache.ctakes.core.cc.AbstractJCasFileWriter;
 import org.apache.ctakes.core.pipeline.PipeBitInfo;
 import org.apache.ctakes.core.util.annotation.IdentifiedAnnotationUtil;
 import org.apache.ctakes.core.util.annotation.OntologyConceptUtil;
-import org.apache.ctakes.core.util.doc.SourceMetadataUtil;
 import org.apache.ctakes.typesystem.type.constants.CONST;
 import org.apache.ctakes.typesystem.type.refsem.Event;
 import org.apache.ctakes.typesystem.type.refsem.EventProperties;
 import org.apache.ctakes.typesystem.type.refsem.UmlsConcept;
-import org.apache.ctakes.typesystem.type.structured.SourceData;
 import org.apache.ctakes.typesystem.type.structured.DocumentPath;
 import org.apache.ctakes.typesystem.type.textsem.EventMention;
 import org.apache.ctakes.typesystem.type.textsem.IdentifiedAnnotation;
@@ -18,26 +16,24 @@ import org.apache.ctakes.typesystem.type.textsem.MedicationMention;
 import org.apache.ctakes.typesystem.type.textsem.TimeMention;
 // import org.apache.ctakes.typesystem.type.refsem.Date;
 import org.apache.ctakes.typesystem.type.refsem.Time;
-import org.apache.ctakes.typesystem.type.structured.SourceData;
 import org.apache.log4j.Logger;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.clulab.timenorm.scfg.Temporal;
+import org.apache.ctakes.temporal.norm.DocumentCreationTime;
+import org.apache.ctakes.temporal.norm.NormalizationCache;
+import org.apache.ctakes.temporal.norm.PersistentNormalizationStore;
+import org.apache.ctakes.temporal.norm.TimexNormalizationEngine;
 import org.clulab.timenorm.scfg.TemporalExpressionParser;
 import org.clulab.timenorm.scfg.TimeSpan;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import me.tongfei.progressbar.*;
-import com.google.common.util.concurrent.TimeLimiter;
-import com.google.common.util.concurrent.SimpleTimeLimiter;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
@@ -74,10 +70,76 @@ public class TimeMentionNormalizer extends org.apache.uima.fit.component.JCasAnn
                             mandatory = false
     )
     private int timeout = DEFAULT_TIMEOUT;
+
+    public static final String PARAM_THREADS = "threads";
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    @ConfigurationParameter(
+                            name = PARAM_THREADS,
+                            description = "Number of TimeNorm workers normalizing a document's timexes concurrently, defaults to the number of cores",
+                            mandatory = false
+    )
+    private int threads = DEFAULT_THREADS;
+
+    public static final String PARAM_CACHE_SIZE = "cacheSize";
+    public static final int DEFAULT_CACHE_SIZE = 50000;
+    @ConfigurationParameter(
+                            name = PARAM_CACHE_SIZE,
+                            description = "Maximum number of normalized timexes remembered across documents, per tier",
+                            mandatory = false
+    )
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    public static final String PARAM_CACHE_AGE = "cacheAge";
+    public static final int DEFAULT_CACHE_AGE = 3600;
+    @ConfigurationParameter(
+                            name = PARAM_CACHE_AGE,
+                            description = "Seconds a remembered normalization may go unused before it is evicted, 0 for no limit",
+                            mandatory = false
+    )
+    private int cacheAge = DEFAULT_CACHE_AGE;
+
+    public static final String PARAM_NORMALIZATION_STORE = "normalizationStore";
+    @ConfigurationParameter(
+                            name = PARAM_NORMALIZATION_STORE,
+                            description = "File of normalizations and TimeNorm timeouts kept between runs, created if missing",
+                            mandatory = false
+    )
+    private String normalizationStore;
+
+    public static final String PARAM_BEAM_WIDTH = "beamWidth";
+    public static final int DEFAULT_BEAM_WIDTH = 0;
+    @ConfigurationParameter(
+                            name = PARAM_BEAM_WIDTH,
+                            description = "Number of TimeNorm parses kept per symbol for each span while parsing a timex, 0 for no limit."
+                                          + " A limit is faster on ambiguous text but can change the normalized value",
+                            mandatory = false
+    )
+    private int beamWidth = DEFAULT_BEAM_WIDTH;
+
+    public static final String PARAM_MAX_PARSES = "maxParses";
+    public static final int DEFAULT_MAX_PARSES = 0;
+    @ConfigurationParameter(
+                            name = PARAM_MAX_PARSES,
+                            description = "Number of best TimeNorm values of a timex kept, 0 for no limit. Never changes the normalized value",
+                            mandatory = false
+    )
+    private int maxParses = DEFAULT_MAX_PARSES;
+
+    public static final String PARAM_WINDOW_RADIUS = "windowRadius";
+    public static final int DEFAULT_WINDOW_RADIUS = 0;
+    @ConfigurationParameter(
+                            name = PARAM_WINDOW_RADIUS,
+                            description = "Only timexes within this many tokens of an event with the TUIs are normalized, 0 to normalize every timex",
+                            mandatory = false
+    )
+    private int windowRadius = DEFAULT_WINDOW_RADIUS;
     private Set<String> tuiSet;
 
-    static private final TemporalExpressionParser normalizer = TemporalExpressionParser.en();
-    static private final TimeLimiter timeLimiter = SimpleTimeLimiter.create(Executors.newSingleThreadExecutor());
+    // timexes normalized and skipped for being outside the windows, by this replica
+    private long normalizedCount;
+    private long skippedCount;
+
+    private TimexNormalizationEngine engine;
 
     @Override
     public void initialize( UimaContext context ) throws ResourceInitializationException {
@@ -93,61 +155,135 @@ public class TimeMentionNormalizer extends org.apache.uima.fit.component.JCasAnn
             this.timeout = parseInt( _timeout, PARAM_TIMEOUT, this.timeout );
         }
         LOGGER.info( "Using timeout: " + this.timeout );
+
+        final Object _threads = context.getConfigParameterValue( PARAM_THREADS );
+        if ( _threads != null ) {
+            this.threads = parseInt( _threads, PARAM_THREADS, this.threads );
+        }
+        LOGGER.info( "Using TimeNorm workers: " + this.threads );
+
+        final Object _cacheSize = context.getConfigParameterValue( PARAM_CACHE_SIZE );
+        if ( _cacheSize != null ) {
+            this.cacheSize = parseInt( _cacheSize, PARAM_CACHE_SIZE, this.cacheSize );
+        }
+        final Object _cacheAge = context.getConfigParameterValue( PARAM_CACHE_AGE );
+        if ( _cacheAge != null ) {
+            this.cacheAge = parseInt( _cacheAge, PARAM_CACHE_AGE, this.cacheAge );
+        }
+        LOGGER.info( "Using normalization cache size: " + this.cacheSize + " age: " + this.cacheAge );
+        final Object _beamWidth = context.getConfigParameterValue( PARAM_BEAM_WIDTH );
+        if ( _beamWidth != null ) {
+            this.beamWidth = parseInt( _beamWidth, PARAM_BEAM_WIDTH, this.beamWidth );
+        }
+        final Object _maxParses = context.getConfigParameterValue( PARAM_MAX_PARSES );
+        if ( _maxParses != null ) {
+            this.maxParses = parseInt( _maxParses, PARAM_MAX_PARSES, this.maxParses );
+        }
+        LOGGER.info( "Using TimeNorm beam width: " + this.beamWidth + " max parses: " + this.maxParses );
+        final Object _windowRadius = context.getConfigParameterValue( PARAM_WINDOW_RADIUS );
+        if ( _windowRadius != null ) {
+            this.windowRadius = parseInt( _windowRadius, PARAM_WINDOW_RADIUS, this.windowRadius );
+        }
+        LOGGER.info( "Using normalization window radius: " + this.windowRadius );
+        final TemporalExpressionParser normalizer = TemporalExpressionParser.shared( "en", this.beamWidth, this.maxParses );
+        PersistentNormalizationStore store = null;
+        if ( this.normalizationStore != null && !this.normalizationStore.trim().isEmpty() ) {
+            try {
+                // known failures are only kept for the grammar and beam they were found with
+                store = PersistentNormalizationStore.open( this.normalizationStore, normalizer.version() );
+            } catch ( IOException ioE ) {
+                throw new ResourceInitializationException( ioE );
+            }
+            LOGGER.info( "Using normalization store: " + this.normalizationStore );
+        }
+        this.engine = new TimexNormalizationEngine(
+                this.threads,
+                this.timeout,
+                new NormalizationCache( this.cacheSize, this.cacheAge ),
+                store,
+                normalizer );
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException {
+        super.collectionProcessComplete();
+        this.engine.flush();
+        this.engine.logQuarantine();
+        LOGGER.info( "Normalization cache " + this.engine.getCacheStats() );
+        LOGGER.info( "Date recognition " + this.engine.getRecognizerStats() );
+        LOGGER.info( "Normalized " + this.normalizedCount + " timexes, skipped "
+                     + this.skippedCount + " outside the event windows" );
+    }
+
+    @Override
+    public void destroy() {
+        if ( this.engine != null ) {
+            this.engine.shutdown();
+        }
+        super.destroy();
     }
 
     @Override
     public void process( JCas jCas ) throws AnalysisEngineProcessException {
-        final SourceData sourceData = SourceMetadataUtil.getOrCreateSourceData( jCas );
-        final String docTime = sourceData.getSourceOriginalDate();
+        if ( !RelevantEvents.isRelevant( jCas ) ) {
+            return;
+        }
         DocumentPath documentPath = JCasUtil.select( jCas, DocumentPath.class ).iterator().next();
         final String fileName = FilenameUtils.getBaseName( documentPath.getDocumentPath() );
-        if (this.tuis != null && !this.tuis.trim().isEmpty()){
-            boolean hasRelevantTUIs = JCasUtil
+        final boolean gated = RelevantEvents.isGated( jCas );
+        final boolean useTuis = !gated && this.tuis != null && !this.tuis.trim().isEmpty();
+        // the gate has already found the relevant events
+        final List<EventMention> relevantEvents = gated
+            ? RelevantEvents.get( jCas )
+            : JCasUtil
                 .select( jCas, EventMention.class )
                 .stream()
-                .map( OntologyConceptUtil::getUmlsConcepts )
-                .flatMap( Collection::stream )
-                .map( UmlsConcept::getTui )
-                .anyMatch( tui -> this.tuiSet.contains( tui ) );
-
-            if ( !hasRelevantTUIs ){
-                LOGGER.info(fileName + " : no events with the provided TUIs " + this.tuis + "skipping to save time");
-                return;
-            }
+                .filter( eventMention -> !useTuis || RelevantEvents.hasTui( eventMention, this.tuiSet ) )
+                .collect( Collectors.toList() );
+        if ( useTuis && relevantEvents.isEmpty() ){
+            LOGGER.info(fileName + " : no events with the provided TUIs " + this.tuis + "skipping to save time");
+            return;
         }
 
-        TimeSpan _DCT = null;
-        if ( docTime == null || docTime.isEmpty() ){
-            LOGGER.warn( fileName + ": Empty Document Creation Time" );
-        } else {
-            String[] docTimeComponents = docTime.split("-");
-            // properly generated
-            if (docTimeComponents.length == 3) {
-                _DCT = TimeSpan.of(
-                                  Integer.parseInt(docTimeComponents[0]),
-                                  Integer.parseInt(docTimeComponents[1]),
-                                  Integer.parseInt(docTimeComponents[2]));
-            } else {
-                // DocTimeApproximator generated
-                _DCT = TimeSpan.of(
-                                  Integer.parseInt(docTime.substring(0, 4)),
-                                  Integer.parseInt(docTime.substring(4, 6)),
-                                  Integer.parseInt(docTime.substring(6, 8)));
-            }
+        final TimeSpan DCT = DocumentCreationTime.get( jCas );
+        if ( DCT == null ) {
+            LOGGER.warn( fileName + ": Empty or malformed Document Creation Time" );
         }
-        final TimeSpan DCT = _DCT;
         List<TimeMention> timeMentions = JCasUtil
             .select( jCas, TimeMention.class )
             .stream()
             .collect( Collectors.toList() );
+        if ( this.windowRadius > 0 ) {
+            // the DCT is parsed above whatever the windows,
+            // timexes the Python side can never pair with an event are not worth a TimeNorm call
+            final TlinkWindows windows = TlinkWindows.of( jCas, relevantEvents, this.windowRadius );
+            final int timexCount = timeMentions.size();
+            timeMentions = timeMentions
+                .stream()
+                .filter( windows::contains )
+                .collect( Collectors.toList() );
+            final int skipped = timexCount - timeMentions.size();
+            this.skippedCount += skipped;
+            LOGGER.debug( fileName + ": skipping " + skipped + " of " + timexCount + " timexes outside the event windows" );
+        }
+        this.normalizedCount += timeMentions.size();
+
+        // TimeNorm calls fan out over the engine's workers,
+        // the CAS itself is only touched from this thread
+        List<String> unnormalizedTimexes = timeMentions
+            .stream()
+            .map( TimeMention::getCoveredText )
+            .collect( Collectors.toList() );
+        List<String> normalizedTimexes = this.engine.normalizeAll( unnormalizedTimexes, DCT, fileName );
 
+        int index = 0;
         for ( TimeMention timeMention : ProgressBar.wrap( timeMentions, fileName + ": Normalizing TimeMentions" ) ){
-            normalize( jCas, DCT, fileName, timeMention );
+            normalize( jCas, normalizedTimexes.get( index ), timeMention );
+            index++;
         }
     }
 
-    private void normalize( JCas jCas, TimeSpan DCT, String fileName, TimeMention timeMention ){
-        String normalizedTimex = getTimeML( DCT, timeMention, fileName );
+    private void normalize( JCas jCas, String normalizedTimex, TimeMention timeMention ){
         if ( normalizedTimex.length() > 0 ){
             Time time = timeMention.getTime();
             if (time == null){
@@ -159,61 +295,6 @@ public class TimeMentionNormalizer extends org.apache.uima.fit.component.JCasAnn
         }
     }
 
-    private String getTimeML( TimeSpan DCT, TimeMention timeMention, String fileName ){
-        String rawTimeMention = timeMention.getCoveredText();
-        String[] rawDateElements = rawTimeMention.split("/");
-         List<Integer> dateElements = new ArrayList<>();
-        for ( String dateElement : rawDateElements ){
-            try {
-                int elem = Integer.parseInt( dateElement );
-                dateElements.add( elem );
-            } catch ( Exception ignored ){}
-        }
-        // can also do this in a way that grabs stragglers
-        if ( dateElements.size() == 3 && rawDateElements.length == 3 ){
-            // avoiding TimeNorm's issues with component order
-            // ambiguity since these notes were all generated
-            // at American hospitals and therefore modulo mistakes
-            // will all use the American convention
-            int month = dateElements.get( 0 );
-            int date = dateElements.get( 1 );
-            int raw_year = dateElements.get( 2 );
-            int year;
-            if ( rawDateElements[2].length() == 2 ){
-                year = raw_year + 2000;
-            } else {
-                year = raw_year;
-            }
-            TimeSpan parsedDate = null;
-            try{
-                parsedDate = TimeSpan.of( year, month, date );
-                String dateMLValue = parsedDate.timeMLValue();
-                // LOGGER.info( fileName + ": successfully rule-parsed " + rawTimeMention + " as " + dateMLValue );
-                return dateMLValue;
-            } catch ( Exception ignored ){
-                // LOGGER.error( fileName + ": failed to do a rule-based parse for " + rawTimeMention );
-            }
-        }
-        String unnormalizedTimex = String.join(" ", timeMention.getCoveredText().split("\\s"));
-        Temporal normalizedTimex = null;
-        try{
-            try{
-                normalizedTimex = timeLimiter
-                    .callUninterruptiblyWithTimeout(
-                        () -> normalizer.parse( unnormalizedTimex, DCT ).get(),
-                        timeout,
-                        TimeUnit.SECONDS );
-            } catch ( Exception ignored ){
-                LOGGER.error( fileName + ": Timenorm could not parse timex " + timeMention.getCoveredText() + " in " + timeout + " seconds or less");
-                return "";
-            }
-        } catch ( Exception ignored ){
-            LOGGER.error( fileName + ": Timenorm failed to normalize timex " + unnormalizedTimex );
-            return "";
-        }
-        return normalizedTimex.timeMLValue();
-    }
-
     // Code due to Sean
     static private int parseInt( final Object value, final String name, final int defaultValue ) {
         if ( value instanceof Integer ) {
@@ -0,0 +1,284 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.core.pipeline.PipeBitInfo;
+import org.apache.ctakes.typesystem.type.syntax.BaseToken;
+import org.apache.ctakes.typesystem.type.syntax.NewlineToken;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.ctakes.typesystem.type.textsem.TimeMention;
+import org.apache.ctakes.typesystem.type.util.Pair;
+import org.apache.ctakes.typesystem.type.util.Pairs;
+import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.FSArray;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the DTR instance of every relevant event and the TLINK instance of every pair of a relevant event
+ * and a normalized timex in its window, as the Python TimelineDelegator would,
+ * and attaches them to the CAS as one {@link Pairs} so the Python side only runs the classifiers.
+ * The first pair is {@link #MARKER}, then one pair per instance with the attribute
+ * <pre>
+ *    dtr eventBegin eventEnd
+ *    tlink eventBegin eventEnd timexBegin timexEnd
+ * </pre>
+ * and the instance text as the value.
+ * Token windows follow Python slicing, so the instances are the same character for character.
+ *
+ * @author chip-nlp
+ */
+@PipeBitInfo(
+        name = "TimelinesInstanceAnnotator ( TxTimelines )",
+        description = " Builds the DTR and TLINK classifier instances for the Python timelines stage ( to be called after TimeMentionNormalizer ) ",
+        dependencies = { PipeBitInfo.TypeProduct.BASE_TOKEN, PipeBitInfo.TypeProduct.EVENT, PipeBitInfo.TypeProduct.TIMEX }
+)
+public class TimelinesInstanceAnnotator extends org.apache.uima.fit.component.JCasAnnotator_ImplBase {
+    final static private Logger LOGGER = Logger.getLogger( "TimelinesInstanceAnnotator" );
+
+    static public final String MARKER = "TxTimelinesInstances";
+
+    public static final String PARAM_TUIS = "tuis";
+
+    @ConfigurationParameter(
+            name = PARAM_TUIS,
+            description = "Comma separated TUIs of the events to build instances for, empty for every event, ignored after the RelevanceGate",
+            defaultValue = "T061",
+            mandatory = false
+    )
+    private String tuis;
+
+    public static final String PARAM_TLINK_RADIUS = "tlinkRadius";
+
+    @ConfigurationParameter(
+            name = PARAM_TLINK_RADIUS,
+            description = "Tokens before and after an event in which timexes are paired with it, MAX_TLINK_DISTANCE in Python",
+            defaultValue = "" + TlinkWindows.DEFAULT_RADIUS,
+            mandatory = false
+    )
+    private int tlinkRadius;
+
+    public static final String PARAM_TLINK_PAD = "tlinkPad";
+
+    @ConfigurationParameter(
+            name = PARAM_TLINK_PAD,
+            description = "Tokens of context before and after a TLINK instance, TLINK_PAD_LENGTH in Python",
+            defaultValue = "2",
+            mandatory = false
+    )
+    private int tlinkPad;
+
+    public static final String PARAM_DTR_RADIUS = "dtrRadius";
+
+    @ConfigurationParameter(
+            name = PARAM_DTR_RADIUS,
+            description = "Tokens of context before and after a DTR instance, DTR_WINDOW_RADIUS in Python",
+            defaultValue = "10",
+            mandatory = false
+    )
+    private int dtrRadius;
+
+    static private final String NEWLINE = "<newline>";
+
+    private Set<String> tuiSet;
+
+    @Override
+    public void initialize( UimaContext context ) throws ResourceInitializationException {
+        super.initialize( context );
+        this.tuiSet = Arrays.stream( this.tuis.split( "," ) )
+                            .map( String::trim )
+                            .filter( tui -> !tui.isEmpty() )
+                            .map( String::toUpperCase )
+                            .collect( Collectors.toCollection( HashSet::new ) );
+    }
+
+    @Override
+    public void process( JCas jCas ) throws AnalysisEngineProcessException {
+        if ( !RelevantEvents.isRelevant( jCas ) ) {
+            return;
+        }
+        final List<EventMention> events = RelevantEvents.isGated( jCas )
+            ? new ArrayList<>( RelevantEvents.get( jCas ) )
+            : JCasUtil.select( jCas, EventMention.class )
+                .stream()
+                .filter( eventMention -> RelevantEvents.hasTui( eventMention, this.tuiSet ) )
+                .collect( Collectors.toList() );
+        final List<Pair> pairs = new ArrayList<>();
+        pairs.add( createPair( jCas, MARKER, "1" ) );
+        if ( !events.isEmpty() ) {
+            addInstances( jCas, events, pairs );
+        }
+        final Pairs instances = new Pairs( jCas );
+        final FSArray<Pair> array = new FSArray<>( jCas, pairs.size() );
+        for ( int i = 0; i < pairs.size(); i++ ) {
+            array.set( i, pairs.get( i ) );
+        }
+        instances.setPairs( array );
+        instances.addToIndexes();
+        LOGGER.debug( "Built " + ( pairs.size() - 1 ) + " instances for " + events.size() + " events" );
+    }
+
+    private void addInstances( final JCas jCas, final List<EventMention> events, final List<Pair> pairs ) {
+        // tokens as the TimelineDelegator sees them : one per begin, newlines tagged
+        final Set<Long> newlines = new HashSet<>();
+        for ( NewlineToken newline : JCasUtil.select( jCas, NewlineToken.class ) ) {
+            newlines.add( span( newline.getBegin(), newline.getEnd() ) );
+        }
+        final String text = jCas.getDocumentText();
+        final Collection<BaseToken> baseTokens = JCasUtil.select( jCas, BaseToken.class );
+        final String[] tokens = new String[ baseTokens.size() ];
+        final int[] begins = new int[ baseTokens.size() ];
+        final int[] ends = new int[ baseTokens.size() ];
+        int count = 0;
+        for ( BaseToken token : baseTokens ) {
+            // in index order the first of tokens sharing a begin is the longest, the one the delegator keeps
+            if ( count > 0 && begins[ count - 1 ] == token.getBegin() ) {
+                continue;
+            }
+            begins[ count ] = token.getBegin();
+            ends[ count ] = token.getEnd();
+            tokens[ count ] = newlines.contains( span( token.getBegin(), token.getEnd() ) )
+                              ? NEWLINE
+                              : text.substring( token.getBegin(), token.getEnd() );
+            count++;
+        }
+        if ( count == 0 ) {
+            return;
+        }
+        final String[] tokenArray = Arrays.copyOf( tokens, count );
+        final Map<Integer, Integer> beginToToken = new HashMap<>();
+        final Map<Integer, Integer> endToToken = new HashMap<>();
+        for ( int i = 0; i < count; i++ ) {
+            beginToToken.put( begins[ i ], i );
+            endToToken.put( ends[ i ], i );
+        }
+
+        // normalized timexes in begin then end order
+        final List<TimeMention> timexes = JCasUtil.select( jCas, TimeMention.class )
+            .stream()
+            .filter( timeMention -> timeMention.getTime() != null )
+            .sorted( Comparator.comparingInt( TimeMention::getBegin ).thenComparingInt( TimeMention::getEnd ) )
+            .collect( Collectors.toList() );
+        events.sort( Comparator.comparingInt( EventMention::getBegin ) );
+
+        // window begins only move forward with the events, so timexes before every later window are passed once
+        int firstTimex = 0;
+        for ( EventMention event : events ) {
+            final Integer eventBegin = beginToToken.get( event.getBegin() );
+            final Integer eventLast = endToToken.get( event.getEnd() );
+            if ( eventBegin == null || eventLast == null ) {
+                LOGGER.warn( "Event " + event.getBegin() + "," + event.getEnd() + " is not on token boundaries, no instances" );
+                continue;
+            }
+            final int eventEnd = eventLast + 1;
+            pairs.add( createPair( jCas, "dtr " + event.getBegin() + " " + event.getEnd(),
+                                   getDtrInstance( tokenArray, eventBegin, eventEnd ) ) );
+
+            final int windowBegin = begins[ Math.max( 0, eventBegin - this.tlinkRadius ) ];
+            final int windowEnd = ends[ Math.min( count - 1, eventLast + this.tlinkRadius ) ];
+            while ( firstTimex < timexes.size() && timexes.get( firstTimex ).getBegin() < windowBegin ) {
+                firstTimex++;
+            }
+            for ( int t = firstTimex; t < timexes.size() && timexes.get( t ).getBegin() <= windowEnd; t++ ) {
+                final TimeMention timex = timexes.get( t );
+                if ( timex.getEnd() < windowBegin || timex.getEnd() > windowEnd ) {
+                    continue;
+                }
+                final Integer timexBegin = beginToToken.get( timex.getBegin() );
+                final Integer timexLast = endToToken.get( timex.getEnd() );
+                if ( timexBegin == null || timexLast == null ) {
+                    LOGGER.warn( "Timex " + timex.getBegin() + "," + timex.getEnd() + " is not on token boundaries, no instance" );
+                    continue;
+                }
+                pairs.add( createPair( jCas,
+                                       "tlink " + event.getBegin() + " " + event.getEnd()
+                                       + " " + timex.getBegin() + " " + timex.getEnd(),
+                                       getTlinkInstance( tokenArray, eventBegin, eventEnd, timexBegin, timexLast + 1 ) ) );
+            }
+        }
+    }
+
+    private String getDtrInstance( final String[] tokens, final int eventBegin, final int eventEnd ) {
+        final List<String> instance = new ArrayList<>();
+        addSlice( instance, tokens, eventBegin - this.dtrRadius, eventBegin );
+        instance.add( "<e>" );
+        addSlice( instance, tokens, eventBegin, eventEnd );
+        instance.add( "</e>" );
+        addSlice( instance, tokens, eventEnd, eventEnd + this.dtrRadius );
+        return String.join( " ", instance );
+    }
+
+    private String getTlinkInstance( final String[] tokens, final int eventBegin, final int eventEnd,
+                                     final int timexBegin, final int timexEnd ) {
+        // the event comes first when both begin on the same token
+        final boolean eventFirst = eventBegin <= timexBegin;
+        final int firstBegin = eventFirst ? eventBegin : timexBegin;
+        final int firstEnd = eventFirst ? eventEnd : timexEnd;
+        final int secondBegin = eventFirst ? timexBegin : eventBegin;
+        final int secondEnd = eventFirst ? timexEnd : eventEnd;
+        final List<String> instance = new ArrayList<>();
+        addSlice( instance, tokens, Math.max( 0, firstBegin - this.tlinkPad ), firstBegin );
+        instance.add( eventFirst ? "<e>" : "<t>" );
+        addSlice( instance, tokens, firstBegin, firstEnd );
+        instance.add( eventFirst ? "</e>" : "</t>" );
+        addSlice( instance, tokens, firstEnd, secondBegin );
+        instance.add( eventFirst ? "<t>" : "<e>" );
+        addSlice( instance, tokens, secondBegin, secondEnd );
+        instance.add( eventFirst ? "</t>" : "</e>" );
+        // as in the delegator the last token of the note is never part of the trailing context
+        addSlice( instance, tokens, secondEnd, Math.min( tokens.length - 1, secondEnd + this.tlinkPad ) );
+        return String.join( " ", instance );
+    }
+
+    /**
+     * Adds tokens[ start : stop ] with Python semantics, negative indices count from the end.
+     */
+    static private void addSlice( final List<String> instance, final String[] tokens, final int start, final int stop ) {
+        final int from = pythonIndex( start, tokens.length );
+        final int to = pythonIndex( stop, tokens.length );
+        for ( int i = from; i < to; i++ ) {
+            instance.add( tokens[ i ] );
+        }
+    }
+
+    static private int pythonIndex( final int index, final int length ) {
+        if ( index < 0 ) {
+            return Math.max( 0, index + length );
+        }
+        return Math.min( index, length );
+    }
+
+    /**
+     * @param pairs some pairs.
+     * @return true if the pairs are the instances built by this annotator.
+     */
+    static public boolean isInstances( final Pairs pairs ) {
+        final FSArray<Pair> array = pairs.getPairs();
+        return array != null && array.size() > 0 && MARKER.equals( ( (Pair)array.get( 0 ) ).getAttribute() );
+    }
+
+    static private long span( final int begin, final int end ) {
+        return ( (long)begin << 32 ) | ( end & 0xffffffffL );
+    }
+
+    static private Pair createPair( final JCas jCas, final String attribute, final String value ) {
+        final Pair pair = new Pair( jCas );
+        pair.setAttribute( attribute );
+        pair.setValue( value );
+        return pair;
+    }
+
+}
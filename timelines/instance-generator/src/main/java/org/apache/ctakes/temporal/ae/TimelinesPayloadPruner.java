@@ -0,0 +1,180 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.core.pipeline.PipeBitInfo;
+import org.apache.ctakes.typesystem.type.relation.CollectionTextRelation;
+import org.apache.ctakes.typesystem.type.structured.DocumentID;
+import org.apache.ctakes.typesystem.type.structured.DocumentIdPrefix;
+import org.apache.ctakes.typesystem.type.structured.DocumentPath;
+import org.apache.ctakes.typesystem.type.structured.Metadata;
+import org.apache.ctakes.typesystem.type.structured.SourceData;
+import org.apache.ctakes.typesystem.type.syntax.BaseToken;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.ctakes.typesystem.type.textsem.TimeMention;
+import org.apache.ctakes.typesystem.type.textspan.Sentence;
+import org.apache.ctakes.typesystem.type.util.Pairs;
+import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.xml.sax.SAXException;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Removes everything the Python TimelineDelegator does not read from a relevant note before it is sent:
+ * only tokens, sentences, relevant events, normalized timexes, the {@link RelevantEvents} record,
+ * the {@link TimelinesInstanceAnnotator} instances and the document id, path and metadata are kept.
+ * Run right before the sender, annotators and writers after it only see what is kept.
+ *
+ * @author chip-nlp
+ */
+@PipeBitInfo(
+        name = "TimelinesPayloadPruner ( TxTimelines )",
+        description = " Removes the annotations the Python timelines stage does not use ( to be called right before PbjJmsSender ) ",
+        dependencies = { PipeBitInfo.TypeProduct.EVENT, PipeBitInfo.TypeProduct.TIMEX }
+)
+public class TimelinesPayloadPruner extends org.apache.uima.fit.component.JCasAnnotator_ImplBase {
+    final static private Logger LOGGER = Logger.getLogger( "TimelinesPayloadPruner" );
+
+    public static final String PARAM_TUIS = "tuis";
+
+    @ConfigurationParameter(
+            name = PARAM_TUIS,
+            description = "Comma separated TUIs of the events that are kept, empty for every event, ignored after the RelevanceGate",
+            defaultValue = "T061",
+            mandatory = false
+    )
+    private String tuis;
+
+    public static final String PARAM_MEASURE_BYTES = "measureBytes";
+
+    @ConfigurationParameter(
+            name = PARAM_MEASURE_BYTES,
+            description = "Serialize each note before and after pruning to measure the reduction, yes or no",
+            defaultValue = "no",
+            mandatory = false
+    )
+    private String measureBytes;
+
+    private Set<String> tuiSet;
+    private boolean measure;
+    private long notes;
+    private long keptCount;
+    private long removedCount;
+    private long bytesBefore;
+    private long bytesAfter;
+
+    @Override
+    public void initialize( UimaContext context ) throws ResourceInitializationException {
+        super.initialize( context );
+        this.tuiSet = Arrays.stream( this.tuis.split( "," ) )
+                            .map( String::trim )
+                            .filter( tui -> !tui.isEmpty() )
+                            .map( String::toUpperCase )
+                            .collect( Collectors.toCollection( HashSet::new ) );
+        this.measure = this.measureBytes.trim().equalsIgnoreCase( "yes" );
+    }
+
+    @Override
+    public void collectionProcessComplete() throws AnalysisEngineProcessException {
+        super.collectionProcessComplete();
+        LOGGER.info( "Pruned " + this.notes + " notes, kept " + this.keptCount
+                     + " and removed " + this.removedCount + " feature structures" );
+        if ( this.measure && this.bytesBefore > 0 ) {
+            LOGGER.info( "Payload " + this.bytesBefore + " bytes before and " + this.bytesAfter + " after pruning, "
+                         + ( 100 * this.bytesAfter / this.bytesBefore ) + "%" );
+        }
+    }
+
+    @Override
+    public void process( JCas jCas ) throws AnalysisEngineProcessException {
+        // irrelevant notes are sent as stubs by the GatedPbjJmsSender
+        if ( !RelevantEvents.isRelevant( jCas ) ) {
+            return;
+        }
+        if ( this.measure ) {
+            this.bytesBefore += getXmiSize( jCas );
+        }
+        final Set<EventMention> relevantEvents = RelevantEvents.isGated( jCas )
+            ? new HashSet<>( RelevantEvents.get( jCas ) )
+            : JCasUtil.select( jCas, EventMention.class )
+                .stream()
+                .filter( eventMention -> RelevantEvents.hasTui( eventMention, this.tuiSet ) )
+                .collect( Collectors.toSet() );
+        final Collection<TOP> featureStructures = JCasUtil.select( jCas, TOP.class );
+        final int total = featureStructures.size();
+        final List<TOP> removals = featureStructures
+            .stream()
+            .filter( featureStructure -> !isKept( featureStructure, relevantEvents ) )
+            .collect( Collectors.toList() );
+        removals.forEach( TOP::removeFromIndexes );
+        this.notes++;
+        this.removedCount += removals.size();
+        this.keptCount += total - removals.size();
+        if ( this.measure ) {
+            this.bytesAfter += getXmiSize( jCas );
+        }
+    }
+
+    static private boolean isKept( final TOP featureStructure, final Set<EventMention> relevantEvents ) {
+        if ( featureStructure instanceof EventMention ) {
+            return relevantEvents.contains( featureStructure );
+        }
+        if ( featureStructure instanceof TimeMention ) {
+            final TimeMention timeMention = (TimeMention)featureStructure;
+            return timeMention.getTime() != null && timeMention.getTime().getNormalizedForm() != null;
+        }
+        if ( featureStructure instanceof Pairs ) {
+            return TimelinesInstanceAnnotator.isInstances( (Pairs)featureStructure );
+        }
+        if ( featureStructure instanceof CollectionTextRelation ) {
+            return RelevantEvents.CATEGORY.equals( ( (CollectionTextRelation)featureStructure ).getCategory() );
+        }
+        return featureStructure instanceof BaseToken
+               || featureStructure instanceof Sentence
+               || featureStructure.getType().getName().equals( CAS.TYPE_NAME_DOCUMENT_ANNOTATION )
+               || featureStructure instanceof DocumentID
+               || featureStructure instanceof DocumentIdPrefix
+               || featureStructure instanceof DocumentPath
+               || featureStructure instanceof Metadata
+               || featureStructure instanceof SourceData;
+    }
+
+    static private long getXmiSize( final JCas jCas ) throws AnalysisEngineProcessException {
+        final CountingStream stream = new CountingStream();
+        try {
+            XmiCasSerializer.serialize( jCas.getCas(), stream );
+        } catch ( SAXException saxE ) {
+            throw new AnalysisEngineProcessException( saxE );
+        }
+        return stream._count;
+    }
+
+
+    static private final class CountingStream extends OutputStream {
+        private long _count;
+
+        @Override
+        public void write( final int b ) {
+            _count++;
+        }
+
+        @Override
+        public void write( final byte[] bytes, final int offset, final int length ) {
+            _count += length;
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.typesystem.type.syntax.BaseToken;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Character spans within a number of tokens of a set of mentions,
+ * the windows in which the Python TimelineDelegator pairs a chemo mention with a timex ( MAX_TLINK_DISTANCE ).
+ * Windows that overlap are merged, so a span inside the windows may be slightly more than a single window allows,
+ * but a span that a single window allows is never outside.
+ *
+ * @author chip-nlp
+ */
+final public class TlinkWindows {
+
+    static public final int DEFAULT_RADIUS = 60;
+
+    // merged windows in begin order, [ _begins[ i ] , _ends[ i ] ] inclusive as in the TimelineDelegator
+    private final int[] _begins;
+    private final int[] _ends;
+
+    /**
+     * @param jCas    document with tokens.
+     * @param centers mentions at the center of the windows.
+     * @param radius  number of tokens before and after each mention.
+     * @return the windows around the mentions, empty if there are no mentions or tokens.
+     */
+    static public TlinkWindows of( final JCas jCas, final Collection<? extends Annotation> centers, final int radius ) {
+        final Collection<BaseToken> tokens = JCasUtil.select( jCas, BaseToken.class );
+        final int[] tokenBegins = new int[ tokens.size() ];
+        final int[] tokenEnds = new int[ tokens.size() ];
+        int tokenCount = 0;
+        for ( BaseToken token : tokens ) {
+            // in index order the first of tokens sharing a begin is the longest, the one the TimelineDelegator keeps
+            if ( tokenCount > 0 && tokenBegins[ tokenCount - 1 ] == token.getBegin() ) {
+                continue;
+            }
+            tokenBegins[ tokenCount ] = token.getBegin();
+            tokenEnds[ tokenCount ] = token.getEnd();
+            tokenCount++;
+        }
+        if ( tokenCount == 0 || centers.isEmpty() ) {
+            return new TlinkWindows( new int[ 0 ], new int[ 0 ] );
+        }
+        final List<int[]> windows = new ArrayList<>( centers.size() );
+        for ( Annotation center : centers ) {
+            // the token the mention begins in and the last token beginning before its end
+            final int first = Math.max( 0, floor( tokenBegins, tokenCount, center.getBegin() ) );
+            final int last = Math.max( first, floor( tokenBegins, tokenCount, center.getEnd() - 1 ) );
+            windows.add( new int[] { tokenBegins[ Math.max( 0, first - radius ) ],
+                                     tokenEnds[ Math.min( tokenCount - 1, last + radius ) ] } );
+        }
+        windows.sort( Comparator.comparingInt( w -> w[ 0 ] ) );
+        final int[] begins = new int[ windows.size() ];
+        final int[] ends = new int[ windows.size() ];
+        int count = 0;
+        for ( int[] window : windows ) {
+            if ( count > 0 && window[ 0 ] <= ends[ count - 1 ] ) {
+                ends[ count - 1 ] = Math.max( ends[ count - 1 ], window[ 1 ] );
+                continue;
+            }
+            begins[ count ] = window[ 0 ];
+            ends[ count ] = window[ 1 ];
+            count++;
+        }
+        final int[] mergedBegins = new int[ count ];
+        final int[] mergedEnds = new int[ count ];
+        System.arraycopy( begins, 0, mergedBegins, 0, count );
+        System.arraycopy( ends, 0, mergedEnds, 0, count );
+        return new TlinkWindows( mergedBegins, mergedEnds );
+    }
+
+    private TlinkWindows( final int[] begins, final int[] ends ) {
+        _begins = begins;
+        _ends = ends;
+    }
+
+    /**
+     * @return true if there are no windows.
+     */
+    public boolean isEmpty() {
+        return _begins.length == 0;
+    }
+
+    /**
+     * @return true if the span is inside a window.
+     */
+    public boolean contains( final int begin, final int end ) {
+        final int window = floor( _begins, _begins.length, begin );
+        return window >= 0 && end <= _ends[ window ];
+    }
+
+    public boolean contains( final Annotation annotation ) {
+        return contains( annotation.getBegin(), annotation.getEnd() );
+    }
+
+    /**
+     * @return index of the last value at or below the offset, -1 if there is none.
+     */
+    static private int floor( final int[] sorted, final int count, final int offset ) {
+        int low = 0;
+        int high = count - 1;
+        while ( low <= high ) {
+            final int middle = ( low + high ) >>> 1;
+            if ( sorted[ middle ] <= offset ) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+}
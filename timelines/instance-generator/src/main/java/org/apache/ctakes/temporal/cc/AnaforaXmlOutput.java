@@ -0,0 +1,232 @@
+package org.apache.ctakes.temporal.cc;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Destination of an Anafora xml file, written element by element in document order.
+ * The streaming output writes straight to a buffered file.
+ * The dom output builds a Document and serializes it with a Transformer when closed.
+ * On Java 8 both produce the same bytes : one element per line without indentation,
+ * empty elements collapsed and characters escaped as the jdk serializer escapes them.
+ *
+ * @author chip-nlp
+ */
+abstract class AnaforaXmlOutput implements Closeable {
+
+   static private final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+   static private final String NEWLINE = System.lineSeparator();
+
+   /**
+    * @param name element that will hold the following elements until {@link #endElement()}.
+    */
+   abstract void startElement( String name ) throws IOException;
+
+   /**
+    * @param name       element without child elements.
+    * @param text       text of the element, null or empty for an empty element.
+    * @param attributes attribute names and values, alternating.
+    */
+   abstract void element( String name, String text, String... attributes ) throws IOException;
+
+   /**
+    * Closes the most recently started element.
+    */
+   abstract void endElement() throws IOException;
+
+   /**
+    * @param file output file.
+    * @return output that writes directly to the file.
+    */
+   static AnaforaXmlOutput streaming( final File file ) throws IOException {
+      return new StreamingOutput( file );
+   }
+
+   /**
+    * @param file        output file.
+    * @param builder     builder for the document.
+    * @param transformer indenting transformer that writes the document to the file when the output is closed.
+    * @return output that builds a document.
+    */
+   static AnaforaXmlOutput dom( final File file, final DocumentBuilder builder, final Transformer transformer ) {
+      return new DomOutput( file, builder, transformer );
+   }
+
+
+   static private final class StreamingOutput extends AnaforaXmlOutput {
+      private final Writer _writer;
+      private final Deque<String> _open = new ArrayDeque<>();
+      // the start tag of the innermost open element has not been closed with '>' yet
+      private boolean _startPending;
+
+      private StreamingOutput( final File file ) throws IOException {
+         _writer = Files.newBufferedWriter( file.toPath(), StandardCharsets.UTF_8 );
+         _writer.write( DECLARATION );
+         _writer.write( NEWLINE );
+      }
+
+      @Override
+      void startElement( final String name ) throws IOException {
+         closeStartTag();
+         _writer.write( '<' );
+         _writer.write( name );
+         _open.push( name );
+         _startPending = true;
+      }
+
+      @Override
+      void element( final String name, final String text, final String... attributes ) throws IOException {
+         closeStartTag();
+         _writer.write( '<' );
+         _writer.write( name );
+         for ( int i = 0; i + 1 < attributes.length; i += 2 ) {
+            _writer.write( ' ' );
+            _writer.write( attributes[ i ] );
+            _writer.write( "=\"" );
+            escape( attributes[ i + 1 ], true );
+            _writer.write( '"' );
+         }
+         if ( text == null || text.isEmpty() ) {
+            _writer.write( "/>" );
+         } else {
+            _writer.write( '>' );
+            escape( text, false );
+            _writer.write( "</" );
+            _writer.write( name );
+            _writer.write( '>' );
+         }
+         _writer.write( NEWLINE );
+      }
+
+      @Override
+      void endElement() throws IOException {
+         final String name = _open.pop();
+         if ( _startPending ) {
+            _writer.write( "/>" );
+            _startPending = false;
+         } else {
+            _writer.write( "</" );
+            _writer.write( name );
+            _writer.write( '>' );
+         }
+         _writer.write( NEWLINE );
+      }
+
+      @Override
+      public void close() throws IOException {
+         _writer.close();
+      }
+
+      private void closeStartTag() throws IOException {
+         if ( _startPending ) {
+            _writer.write( '>' );
+            _writer.write( NEWLINE );
+            _startPending = false;
+         }
+      }
+
+      private void escape( final String text, final boolean attribute ) throws IOException {
+         final int length = text.length();
+         for ( int i = 0; i < length; i++ ) {
+            final char c = text.charAt( i );
+            if ( c == '&' ) {
+               _writer.write( "&amp;" );
+            } else if ( c == '<' ) {
+               _writer.write( "&lt;" );
+            } else if ( c == '>' ) {
+               _writer.write( "&gt;" );
+            } else if ( c == '"' && attribute ) {
+               _writer.write( "&quot;" );
+            } else if ( c == '\n' && !attribute ) {
+               _writer.write( NEWLINE );
+            } else if ( c == '\t' && !attribute ) {
+               _writer.write( c );
+            } else if ( c < 0x20 || ( c >= 0x7F && c <= 0x9F && !attribute ) ) {
+               writeReference( c );
+            } else if ( Character.isHighSurrogate( c ) && i + 1 < length
+                        && Character.isLowSurrogate( text.charAt( i + 1 ) ) ) {
+               writeReference( Character.toCodePoint( c, text.charAt( i + 1 ) ) );
+               i++;
+            } else if ( Character.isSurrogate( c ) ) {
+               throw new IOException( "Invalid UTF-16 surrogate detected: " + Integer.toHexString( c ) );
+            } else {
+               _writer.write( c );
+            }
+         }
+      }
+
+      private void writeReference( final int codePoint ) throws IOException {
+         _writer.write( "&#" );
+         _writer.write( Integer.toString( codePoint ) );
+         _writer.write( ';' );
+      }
+   }
+
+
+   static private final class DomOutput extends AnaforaXmlOutput {
+      private final File _file;
+      private final Transformer _transformer;
+      private final Document _doc;
+      private final Deque<Element> _open = new ArrayDeque<>();
+
+      private DomOutput( final File file, final DocumentBuilder builder, final Transformer transformer ) {
+         _file = file;
+         _transformer = transformer;
+         _doc = builder.newDocument();
+      }
+
+      @Override
+      void startElement( final String name ) {
+         final Element element = _doc.createElement( name );
+         append( element );
+         _open.push( element );
+      }
+
+      @Override
+      void element( final String name, final String text, final String... attributes ) {
+         final Element element = _doc.createElement( name );
+         for ( int i = 0; i + 1 < attributes.length; i += 2 ) {
+            element.setAttribute( attributes[ i ], attributes[ i + 1 ] );
+         }
+         element.setTextContent( text );
+         append( element );
+      }
+
+      @Override
+      void endElement() {
+         _open.pop();
+      }
+
+      @Override
+      public void close() throws IOException {
+         try {
+            _transformer.transform( new DOMSource( _doc ), new StreamResult( _file ) );
+         } catch ( TransformerException transE ) {
+            throw new IOException( transE );
+         }
+      }
+
+      private void append( final Element element ) {
+         if ( _open.isEmpty() ) {
+            _doc.appendChild( element );
+         } else {
+            _open.peek().appendChild( element );
+         }
+      }
+   }
+
+}
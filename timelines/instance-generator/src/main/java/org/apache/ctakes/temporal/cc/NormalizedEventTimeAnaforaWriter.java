@@ -4,38 +4,36 @@ import org.apache.ctakes.core.cc.AbstractJCasFileWriter;
 import org.apache.ctakes.core.pipeline.PipeBitInfo;
 import org.apache.ctakes.core.util.annotation.IdentifiedAnnotationUtil;
 import org.apache.ctakes.core.util.annotation.OntologyConceptUtil;
-import org.apache.ctakes.core.util.doc.SourceMetadataUtil;
 import org.apache.ctakes.typesystem.type.constants.CONST;
 import org.apache.ctakes.typesystem.type.refsem.Event;
 import org.apache.ctakes.typesystem.type.refsem.EventProperties;
+import org.apache.ctakes.typesystem.type.refsem.Time;
 import org.apache.ctakes.typesystem.type.refsem.UmlsConcept;
-import org.apache.ctakes.typesystem.type.structured.SourceData;
 import org.apache.ctakes.typesystem.type.textsem.EventMention;
 import org.apache.ctakes.typesystem.type.textsem.IdentifiedAnnotation;
 import org.apache.ctakes.typesystem.type.textsem.MedicationMention;
 import org.apache.ctakes.typesystem.type.textsem.TimeMention;
+import org.apache.ctakes.temporal.norm.DocumentCreationTime;
+import org.apache.ctakes.temporal.norm.NormalizationCache;
+import org.apache.ctakes.temporal.norm.TimexNormalizationEngine;
 import org.apache.log4j.Logger;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.clulab.timenorm.scfg.Temporal;
-import org.clulab.timenorm.scfg.TemporalExpressionParser;
 import org.clulab.timenorm.scfg.TimeSpan;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -43,6 +41,10 @@ import static org.apache.ctakes.core.pipeline.PipeBitInfo.TypeProduct.BASE_TOKEN
 import static org.apache.ctakes.core.pipeline.PipeBitInfo.TypeProduct.DOCUMENT_ID_PREFIX;
 
 /**
+ * Safe to run as concurrent replicas in a multi-threaded pipeline :
+ * static state is immutable and each replica has its own xml tools and fallback normalization engine.
+ * The fallback engine is only started once a time mention without a normalized form is written.
+ *
  * @author SPF , chip-nlp
  * @since {3/2/2023}
  */
@@ -55,7 +57,6 @@ import static org.apache.ctakes.core.pipeline.PipeBitInfo.TypeProduct.DOCUMENT_I
 final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWriter {
 
    final static private Logger LOGGER = Logger.getLogger( "EventTimeAnaforaWriter_NORM" );
-   static private final TemporalExpressionParser normalizer = TemporalExpressionParser.en();
 
    // for now give a 'non time'
    //static private final TimeSpan dummyDCT = TimeSpan.of(, 4, 1);
@@ -86,9 +87,63 @@ final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWrit
    )
    private String _onlyTemporalEvents;
 
+   /**
+    * The dom output is kept for comparison, on Java 8 both outputs write the same bytes.
+    */
+   static public final String PARAM_STREAMING_OUTPUT = "StreamingOutput";
+   @ConfigurationParameter(
+           name = PARAM_STREAMING_OUTPUT,
+           description = "Write the xml directly to the file instead of building and transforming a DOM. Default is yes.",
+           defaultValue = "yes",
+           mandatory = false
+   )
+   private String _streamingOutput;
+
+   /**
+    * Only used for time mentions that the TimeMentionNormalizer did not normalize.
+    */
+   static public final String PARAM_NORMALIZATION_TIMEOUT = "NormalizationTimeout";
+   @ConfigurationParameter(
+           name = PARAM_NORMALIZATION_TIMEOUT,
+           description = "Seconds allowed to normalize a time mention that has no normalized form. Default is 5.",
+           defaultValue = "5",
+           mandatory = false
+   )
+   private int _normalizationTimeout;
+
+   static public final String PARAM_NORMALIZATION_THREADS = "NormalizationThreads";
+   @ConfigurationParameter(
+           name = PARAM_NORMALIZATION_THREADS,
+           description = "Number of TimeNorm workers normalizing time mentions that have no normalized form. Default is 1.",
+           defaultValue = "1",
+           mandatory = false
+   )
+   private int _normalizationThreads;
+
+   static public final String PARAM_NORMALIZATION_CACHE_SIZE = "NormalizationCacheSize";
+   @ConfigurationParameter(
+           name = PARAM_NORMALIZATION_CACHE_SIZE,
+           description = "Maximum number of normalized time mentions remembered across documents, per tier. Default is 50000.",
+           defaultValue = "50000",
+           mandatory = false
+   )
+   private int _normalizationCacheSize;
+
+   static public final String PARAM_NORMALIZATION_CACHE_AGE = "NormalizationCacheAge";
+   @ConfigurationParameter(
+           name = PARAM_NORMALIZATION_CACHE_AGE,
+           description = "Seconds a remembered normalization may go unused before it is evicted, 0 for no limit. Default is 3600.",
+           defaultValue = "3600",
+           mandatory = false
+   )
+   private int _normalizationCacheAge;
+
+   private DocumentBuilder _docBuilder;
+   private Transformer _transformer;
+   private TimexNormalizationEngine _normalizationEngine;
 
    static private final String SAVE_TIME_PATTERN = "yyyy-MMdd-HH:mm";
-   static private final SimpleDateFormat SAVE_TIME_FORMAT = new SimpleDateFormat( SAVE_TIME_PATTERN);
+   static private final DateTimeFormatter SAVE_TIME_FORMAT = DateTimeFormatter.ofPattern( SAVE_TIME_PATTERN );
 
 
 
@@ -98,6 +153,42 @@ final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWrit
              || _onlyTemporalEvents.equalsIgnoreCase( "true" );
    }
 
+   /**
+    * @return the fallback normalization engine, started on first use.
+    */
+   private TimexNormalizationEngine getNormalizationEngine() {
+      if ( _normalizationEngine == null ) {
+         // the same timexes recur across a corpus, only parse each once per DCT
+         _normalizationEngine = new TimexNormalizationEngine( _normalizationThreads,
+                                                              _normalizationTimeout,
+                                                              new NormalizationCache( _normalizationCacheSize,
+                                                                                      _normalizationCacheAge ) );
+      }
+      return _normalizationEngine;
+   }
+
+   @Override
+   public void collectionProcessComplete() throws AnalysisEngineProcessException {
+      super.collectionProcessComplete();
+      if ( _normalizationEngine != null ) {
+         LOGGER.info( "Fallback normalization cache " + _normalizationEngine.getCacheStats() );
+      }
+   }
+
+   @Override
+   public void destroy() {
+      if ( _normalizationEngine != null ) {
+         _normalizationEngine.shutdown();
+      }
+      super.destroy();
+   }
+
+   private boolean streamingOutput() {
+      return _streamingOutput == null
+             || _streamingOutput.equalsIgnoreCase( "yes" )
+             || _streamingOutput.equalsIgnoreCase( "true" );
+   }
+
    /**
     * Writes some document metadata and discovered event information.
     */
@@ -107,65 +198,58 @@ final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWrit
                           final String documentId,
                           final String fileName ) throws IOException {
       final File file = new File( outputDir, fileName + _fileExtension );
+      try ( AnaforaXmlOutput output = createOutput( file ) ) {
+         output.startElement( "data" );
+         writeInfoElement( output );
+         writeSchemaElement( output );
+         writeAnnotationsElement( jCas, documentId, output );
+         output.endElement();
+      }
+   }
+
+   private AnaforaXmlOutput createOutput( final File file ) throws IOException {
+      if ( streamingOutput() ) {
+         return AnaforaXmlOutput.streaming( file );
+      }
       try {
-         final DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-         final DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-         final Document doc = docBuilder.newDocument();
-
-         final Element rootElement = doc.createElement( "data" );
-         rootElement.appendChild( createInfoElement( doc  ) );
-         rootElement.appendChild( createSchemaElement( doc ) );
-         rootElement.appendChild( createAnnotationsElement( jCas, documentId, doc ) );
-         doc.appendChild( rootElement );
-
-         // boilerplate xml-writing code:
-         final TransformerFactory transformerFactory = TransformerFactory.newInstance();
-         final Transformer transformer = transformerFactory.newTransformer();
-         transformer.setOutputProperty( OutputKeys.INDENT, "yes" );
-         transformer.setOutputProperty( OutputKeys.METHOD, "xml" );
-         final DOMSource source = new DOMSource( doc );
-         final StreamResult result = new StreamResult( file );
-         transformer.transform( source, result );
-      } catch ( ParserConfigurationException | TransformerException multE ) {
+         // boilerplate xml-writing code, the builder and transformer are reused for every document
+         if ( _docBuilder == null ) {
+            _docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            _transformer = TransformerFactory.newInstance().newTransformer();
+            _transformer.setOutputProperty( OutputKeys.INDENT, "yes" );
+            _transformer.setOutputProperty( OutputKeys.METHOD, "xml" );
+         }
+      } catch ( ParserConfigurationException | TransformerConfigurationException multE ) {
          throw new IOException( multE );
       }
+      return AnaforaXmlOutput.dom( file, _docBuilder, _transformer );
    }
 
 
-   static private Element createInfoElement( final Document doc ) {
-      final Element info = doc.createElement( "info" );
-      final Element saveTime = doc.createElement( "savetime" );
-      final String saveTimeText = SAVE_TIME_FORMAT.format( new Date() );
-      saveTime.setTextContent( saveTimeText );
-      final Element progress = doc.createElement( "progress" );
-      progress.setTextContent( "completed" );
-      info.appendChild( saveTime );
-      info.appendChild( progress );
-      return info;
+   static private void writeInfoElement( final AnaforaXmlOutput output ) throws IOException {
+      output.startElement( "info" );
+      output.element( "savetime", SAVE_TIME_FORMAT.format( LocalDateTime.now() ) );
+      output.element( "progress", "completed" );
+      output.endElement();
    }
 
-   static private Element createSchemaElement( final Document doc ) {
-      final Element schema = doc.createElement( "schema" );
-      schema.setAttribute( "path", "./" );
-      schema.setAttribute( "protocol", "file" );
-      schema.setTextContent( "temporal-schema_NORM.xml" );
-      return schema;
+   static private void writeSchemaElement( final AnaforaXmlOutput output ) throws IOException {
+      output.element( "schema", "temporal-schema_NORM.xml", "path", "./", "protocol", "file" );
    }
 
-   private Element createAnnotationsElement( final JCas jCas,
-                                             final String documentId,
-                                             final Document doc ) {
-      final Element annotations = doc.createElement( "annotations" );
-      int nextIdNumber = addEventElements( jCas, documentId, 1, annotations, doc );
-      nextIdNumber = addTimeElements( jCas, documentId, nextIdNumber, annotations, doc );
-      return annotations;
+   private void writeAnnotationsElement( final JCas jCas,
+                                         final String documentId,
+                                         final AnaforaXmlOutput output ) throws IOException {
+      output.startElement( "annotations" );
+      int nextIdNumber = writeEventElements( jCas, documentId, 1, output );
+      nextIdNumber = writeTimeElements( jCas, documentId, nextIdNumber, output );
+      output.endElement();
    }
 
-   private int addEventElements( final JCas jCas,
-                                  final String documentId,
+   private int writeEventElements( final JCas jCas,
+                                   final String documentId,
                                    final int startId,
-                                   final Element annotations,
-                                   final Document doc ) {
+                                   final AnaforaXmlOutput output ) throws IOException {
       final List<EventMention> eventMentions = new ArrayList<>( JCasUtil.select( jCas, EventMention.class ) );
       eventMentions.sort( Comparator.comparingInt( EventMention::getBegin )
                                     .thenComparingInt( EventMention::getEnd ) );
@@ -176,21 +260,19 @@ final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWrit
          if ( onlyTemporalEvents && !eventMention.getClass().equals( EventMention.class ) ) {
             continue;
          }
-         annotations.appendChild( createEventElement( eventMention, documentId, idNumber, doc ) );
+         writeEventElement( eventMention, documentId, idNumber, output );
          idNumber++;
       }
       return idNumber + 1;
    }
 
-   static private Element createEventElement( final EventMention eventMention,
-                                              final String documentId,
-                                              final int idNumber,
-                                              final Document doc ) {
-
-      final Element event = createBaseElement( eventMention, "EVENT", documentId, idNumber, doc );
-
-      event.appendChild( createEventPropertiesElement( eventMention, doc ) );
-      return event;
+   static private void writeEventElement( final EventMention eventMention,
+                                          final String documentId,
+                                          final int idNumber,
+                                          final AnaforaXmlOutput output ) throws IOException {
+      startBaseElement( eventMention, "EVENT", documentId, idNumber, output );
+      writeEventPropertiesElement( eventMention, output );
+      output.endElement();
    }
 
    static private String trimTo8( final String text ) {
@@ -200,8 +282,8 @@ final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWrit
       return "<" + text.substring( text.length() - 7);
    }
 
-   static private Element createEventPropertiesElement( final EventMention eventMention,
-                                                        final Document doc ) {
+   static private void writeEventPropertiesElement( final EventMention eventMention,
+                                                    final AnaforaXmlOutput output ) throws IOException {
 
       // just to make sure
       Collection<UmlsConcept> umlsConcepts = ( eventMention instanceof MedicationMention ) ? OntologyConceptUtil.getUmlsConcepts(  eventMention ) : new HashSet<>();
@@ -218,7 +300,8 @@ final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWrit
       final Event event = eventMention.getEvent();
 
       if ( event == null ) {
-         return createNullEventProperties( IdentifiedAnnotationUtil.isNegated( eventMention ) , doc , drugCUIs );
+         writeNullEventProperties( IdentifiedAnnotationUtil.isNegated( eventMention ) , output , drugCUIs );
+         return;
       }
 
       int certaintyClass = Optional.of( eventMention )
@@ -226,113 +309,50 @@ final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWrit
               .orElse( -1 );
 
 
-      final Element properties = doc.createElement( "properties" );
       final EventProperties eventProperties = event.getProperties();
-      Element docTimeRel = doc.createElement( "DocTimeRel" );
-      final String dtrContent = eventProperties.getDocTimeRel();
-      docTimeRel.setTextContent( dtrContent );
-      final Element eventType = doc.createElement( "Type" );
-      eventType.setTextContent( "N/A" );
-      final Element degree = doc.createElement( "Degree" );
-      degree.setTextContent( "N/A" );
-      final Element polarity = doc.createElement( "Polarity" );
       final String polarityValue = IdentifiedAnnotationUtil.isNegated( eventMention ) ? "NEG" : "POS";
-      polarity.setTextContent( polarityValue );
-
-
-
-      final Element contextMode = doc.createElement( "ContextualModality" );
-      contextMode.setTextContent( eventProperties.getContextualModality() );
-      final Element contextAspect = doc.createElement( "ContextualAspect" );
-      contextAspect.setTextContent( eventProperties.getContextualAspect() );
-      final Element Permanence = doc.createElement( "Permanence" );
-      Permanence.setTextContent( "UNDETERMINED" );
-      final Element cuiElement = doc.createElement("CUI");
-      cuiElement.setTextContent( drugCUIs );
-
-      final Element textLiteralElement = doc.createElement("Text");
-      textLiteralElement.setTextContent( eventMention.getCoveredText() );
-
-      properties.appendChild( docTimeRel );
-      properties.appendChild( polarity );
-      properties.appendChild( degree );
-      properties.appendChild( eventType );
-      properties.appendChild( contextMode );
-      properties.appendChild( contextAspect );
-      properties.appendChild( Permanence );
-      properties.appendChild( cuiElement );
-      properties.appendChild( textLiteralElement );
+
+      output.startElement( "properties" );
+      output.element( "DocTimeRel", eventProperties.getDocTimeRel() );
+      output.element( "Polarity", polarityValue );
+      output.element( "Degree", "N/A" );
+      output.element( "Type", "N/A" );
+      output.element( "ContextualModality", eventProperties.getContextualModality() );
+      output.element( "ContextualAspect", eventProperties.getContextualAspect() );
+      output.element( "Permanence", "UNDETERMINED" );
+      output.element( "CUI", drugCUIs );
+      output.element( "Text", eventMention.getCoveredText() );
       if ( certaintyClass > -1 ) {
          String certaintyString = certaintyClass == CONST.NE_UNCERTAINTY_ABSENT ? "certain" : "uncertain";
-         final Element certaintyElem = doc.createElement( "Certainty" );
-         certaintyElem.setTextContent( certaintyString );
-         properties.appendChild( certaintyElem );
+         output.element( "Certainty", certaintyString );
       }
-      return properties;
+      output.endElement();
    }
 
-   static private Element createNullEventProperties( final boolean isNegated, final Document doc, final String drugCUIs ) {
-      final Element properties = doc.createElement( "properties" );
-      Element docTimeRel = doc.createElement( "DocTimeRel" );
-      docTimeRel.setTextContent( "Overlap" );
-      final Element eventType = doc.createElement( "Type" );
-      eventType.setTextContent( "N/A" );
-      final Element degree = doc.createElement( "Degree" );
-      degree.setTextContent( "N/A" );
-      final Element polarity = doc.createElement( "Polarity" );
+   static private void writeNullEventProperties( final boolean isNegated,
+                                                 final AnaforaXmlOutput output,
+                                                 final String drugCUIs ) throws IOException {
       final String polarityValue = isNegated ? "NEG" : "POS";
-      polarity.setTextContent( polarityValue );
-      final Element contextMode = doc.createElement( "ContextualModality" );
-      contextMode.setTextContent( "UNDETERMINED" );
-      final Element contextAspect = doc.createElement( "ContextualAspect" );
-      contextAspect.setTextContent( "UNDETERMINED" );
-      final Element Permanence = doc.createElement( "Permanence" );
-      Permanence.setTextContent( "UNDETERMINED" );
-      final Element cuiElement = doc.createElement("CUI");
-      cuiElement.setTextContent( drugCUIs );
-
-      properties.appendChild( docTimeRel );
-      properties.appendChild( polarity );
-      properties.appendChild( degree );
-      properties.appendChild( eventType );
-      properties.appendChild( contextMode );
-      properties.appendChild( contextAspect );
-      properties.appendChild( Permanence );
-      properties.appendChild( cuiElement );
-      return properties;
+      output.startElement( "properties" );
+      output.element( "DocTimeRel", "Overlap" );
+      output.element( "Polarity", polarityValue );
+      output.element( "Degree", "N/A" );
+      output.element( "Type", "N/A" );
+      output.element( "ContextualModality", "UNDETERMINED" );
+      output.element( "ContextualAspect", "UNDETERMINED" );
+      output.element( "Permanence", "UNDETERMINED" );
+      output.element( "CUI", drugCUIs );
+      output.endElement();
    }
 
 
-   private int addTimeElements( final JCas jCas,
-                                 final String documentId,
-                                 final int startId,
-                                 final Element annotations,
-                                 final Document doc ) {
-      final SourceData sourceData = SourceMetadataUtil.getOrCreateSourceData( jCas );
-      final String docTime = sourceData.getSourceOriginalDate();
-
-      TimeSpan DCT = null;
-
-
-      if ( docTime == null || docTime.isEmpty() ){
-         LOGGER.warn( "Empty DCT, not creating the node" );
-      } else {
-         String[] docTimeComponents = docTime.split("-");
-
-
-         // properly generated
-         if (docTimeComponents.length == 3) {
-            DCT = TimeSpan.of(
-                    Integer.parseInt(docTimeComponents[0]),
-                    Integer.parseInt(docTimeComponents[1]),
-                    Integer.parseInt(docTimeComponents[2]));
-         } else {
-            // DocTimeApproximator generated
-            DCT = TimeSpan.of(
-                    Integer.parseInt(docTime.substring(0, 4)),
-                    Integer.parseInt(docTime.substring(4, 6)),
-                    Integer.parseInt(docTime.substring(6, 8)));
-         }
+   private int writeTimeElements( final JCas jCas,
+                                  final String documentId,
+                                  final int startId,
+                                  final AnaforaXmlOutput output ) throws IOException {
+      final TimeSpan DCT = DocumentCreationTime.get( jCas );
+      if ( DCT == null ) {
+         LOGGER.warn( "Empty or malformed DCT, not creating the node" );
       }
 
 
@@ -343,12 +363,13 @@ final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWrit
 
       // DOCTIME
       if ( DCT != null ) {
-         annotations.appendChild(createDOCTIME(DCT.timeMLValue(), documentId, idNumber, doc));
+         writeDOCTIME( DCT.timeMLValue(), documentId, idNumber, output );
          idNumber++;
       }
 
-      for ( TimeMention timeMention : timeMentions ) {
-         annotations.appendChild( createTimeElement( timeMention, DCT, documentId, idNumber, doc ) );
+      final List<String> normalizedTimexes = getNormalizedTimexes( timeMentions, DCT, documentId );
+      for ( int i = 0; i < timeMentions.size(); i++ ) {
+         writeTimeElement( timeMentions.get( i ), normalizedTimexes.get( i ), documentId, idNumber, output );
          idNumber++;
       }
 
@@ -357,94 +378,103 @@ final public class NormalizedEventTimeAnaforaWriter extends AbstractJCasFileWrit
       return idNumber + 1;
    }
 
-   static private Element createTimeElement( final TimeMention timeMention,
-                                             final TimeSpan DCT,
-                                             final String documentId,
-                                             final int idNumber,
-                                             final Document doc ) {
-      final Element properties = doc.createElement( "properties" );
-      String typeName = "";
-      String unnormalizedTimex = timeMention.getCoveredText();
-      Temporal normalizedTimex = null;
-      try{
-         normalizedTimex = normalizer.parse( unnormalizedTimex, DCT ).get();
-      } catch (Exception ignored){}
-
-
-      final Element normalizedExpression = doc.createElement( "normalizedExpression" );
-      if ( normalizedTimex != null ){
-         normalizedExpression.setTextContent( normalizedTimex.timeMLValue() );
-      } else {
-         System.err.println("Resorting to unnormalized timex: " + unnormalizedTimex );
-         normalizedExpression.setTextContent( unnormalizedTimex );
+   /**
+    * @return for each time mention the normalized form set by the TimeMentionNormalizer,
+    * otherwise a time-limited normalization, otherwise the covered text.
+    */
+   private List<String> getNormalizedTimexes( final List<TimeMention> timeMentions,
+                                              final TimeSpan DCT,
+                                              final String documentId ) {
+      final List<String> normalizedTimexes = new ArrayList<>( timeMentions.size() );
+      final List<String> unnormalizedTimexes = new ArrayList<>();
+      for ( TimeMention timeMention : timeMentions ) {
+         final Time time = timeMention.getTime();
+         final String normalizedForm = time == null ? null : time.getNormalizedForm();
+         if ( normalizedForm == null || normalizedForm.isEmpty() ) {
+            unnormalizedTimexes.add( timeMention.getCoveredText() );
+            normalizedTimexes.add( null );
+         } else {
+            normalizedTimexes.add( normalizedForm );
+         }
+      }
+      if ( unnormalizedTimexes.isEmpty() ) {
+         return normalizedTimexes;
       }
+      final Iterator<String> fallbacks
+            = getNormalizationEngine().normalizeAll( unnormalizedTimexes, DCT, documentId ).iterator();
+      int unnormalizedCount = 0;
+      for ( int i = 0; i < normalizedTimexes.size(); i++ ) {
+         if ( normalizedTimexes.get( i ) != null ) {
+            continue;
+         }
+         final String fallback = fallbacks.next();
+         if ( fallback.isEmpty() ) {
+            final String unnormalizedTimex = timeMentions.get( i ).getCoveredText();
+            LOGGER.debug( "Resorting to unnormalized timex: " + unnormalizedTimex );
+            normalizedTimexes.set( i, unnormalizedTimex );
+            unnormalizedCount++;
+         } else {
+            normalizedTimexes.set( i, fallback );
+         }
+      }
+      if ( unnormalizedCount > 0 ) {
+         LOGGER.warn( documentId + " : resorting to unnormalized text for " + unnormalizedCount + " timexes" );
+      }
+      return normalizedTimexes;
+   }
 
+   static private void writeTimeElement( final TimeMention timeMention,
+                                         final String normalizedTimex,
+                                         final String documentId,
+                                         final int idNumber,
+                                         final AnaforaXmlOutput output ) throws IOException {
+      String typeName = "";
       final String timeClass = timeMention.getTimeClass();
-      if ( timeClass != null && ( timeClass.equals( "DOCTIME" ) || timeClass.equals( "SECTIONTIME" ) ) ) {
+      final boolean isDocTime = timeClass != null && ( timeClass.equals( "DOCTIME" ) || timeClass.equals( "SECTIONTIME" ) );
+      if ( isDocTime ) {
          typeName = timeClass;
-         properties.appendChild( normalizedExpression );
       } else { // inserting and normalizing here
          typeName = "TIMEX3";
-         final Element classE = doc.createElement( "Class" );
-         classE.setTextContent( timeClass );
-         properties.appendChild( classE );
-         properties.appendChild( normalizedExpression );
-
       }
-      final Element time = createBaseElement( timeMention, typeName, documentId, idNumber, doc );
-      time.appendChild( properties );
-      return time;
+      startBaseElement( timeMention, typeName, documentId, idNumber, output );
+      output.startElement( "properties" );
+      if ( !isDocTime ) {
+         output.element( "Class", timeClass );
+      }
+      output.element( "normalizedExpression", normalizedTimex );
+      output.endElement();
+      output.endElement();
    }
 
 
-   static private Element createBaseElement( final IdentifiedAnnotation annotation,
-                                              final String typeName,
-                                              final String documentId,
-                                              final int idNumber,
-                                              final Document doc ) {
-
-      final Element base = doc.createElement( "entity" );
-      final String eventID = idNumber + "@e@" + documentId + "@system";
-      final Element id = doc.createElement( "id" );
-      id.setTextContent( eventID );
-      final Element span = doc.createElement( "span" );
-      span.setTextContent( annotation.getBegin() + "," + annotation.getEnd() );
-      final Element type = doc.createElement( "type" );
-      type.setTextContent( typeName );
-      final Element parentsType = doc.createElement( "parentsType" );
-      parentsType.setTextContent( "TemporalEntities" );
-      base.appendChild( id );
-      base.appendChild( span );
-      base.appendChild( type );
-      base.appendChild( parentsType );
-      return base;
-   }
-
-   static private Element createDOCTIME( final String normalizedTimex,
+   /**
+    * Starts an entity element and writes its id, span and type, the caller writes the properties and ends it.
+    */
+   static private void startBaseElement( final IdentifiedAnnotation annotation,
+                                         final String typeName,
                                          final String documentId,
                                          final int idNumber,
-                                         final Document doc ) {
-
-      final Element docTimeNode = doc.createElement( "entity" );
+                                         final AnaforaXmlOutput output ) throws IOException {
       final String eventID = idNumber + "@e@" + documentId + "@system";
-      final Element id = doc.createElement( "id" );
-      id.setTextContent( eventID );
-      final Element type = doc.createElement( "type" );
-      type.setTextContent( "DOCTIME" );
-      final Element parentsType = doc.createElement( "parentsType" );
-      parentsType.setTextContent( "TemporalEntities" );
-
-      final Element properties = doc.createElement( "properties" );
-      final Element normalizedExpression = doc.createElement( "normalizedExpression" );
-      normalizedExpression.setTextContent( normalizedTimex );
-      properties.appendChild( normalizedExpression );
-
-
-      docTimeNode.appendChild( id );
-      docTimeNode.appendChild( type );
-      docTimeNode.appendChild( parentsType );
-      docTimeNode.appendChild( properties );
+      output.startElement( "entity" );
+      output.element( "id", eventID );
+      output.element( "span", annotation.getBegin() + "," + annotation.getEnd() );
+      output.element( "type", typeName );
+      output.element( "parentsType", "TemporalEntities" );
+   }
 
-      return docTimeNode;
+   static private void writeDOCTIME( final String normalizedTimex,
+                                     final String documentId,
+                                     final int idNumber,
+                                     final AnaforaXmlOutput output ) throws IOException {
+      final String eventID = idNumber + "@e@" + documentId + "@system";
+      output.startElement( "entity" );
+      output.element( "id", eventID );
+      output.element( "type", "DOCTIME" );
+      output.element( "parentsType", "TemporalEntities" );
+      output.startElement( "properties" );
+      output.element( "normalizedExpression", normalizedTimex );
+      output.endElement();
+      output.endElement();
    }
 }
@@ -0,0 +1,150 @@
+package org.apache.ctakes.temporal.cc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One temporal entity of a note as written by the {@link TemporalRowWriter}.
+ * Events have no normalized timex, times have no event properties, those columns are null.
+ * The DOCTIME entity has no span, its begin and end are -1.
+ *
+ * @author chip-nlp
+ */
+final public class TemporalRow {
+
+   static public final String[] COLUMNS = { "note", "patient", "id", "begin", "end", "type",
+                                            "DocTimeRel", "polarity", "modality", "CUIs", "normalizedTimex" };
+
+   private final String _note;
+   private final String _patient;
+   private final String _id;
+   private final int _begin;
+   private final int _end;
+   private final String _type;
+   private final String _docTimeRel;
+   private final String _polarity;
+   private final String _modality;
+   private final String _cuis;
+   private final String _normalizedTimex;
+
+   public TemporalRow( final String note, final String patient, final String id, final int begin, final int end,
+                       final String type, final String docTimeRel, final String polarity, final String modality,
+                       final String cuis, final String normalizedTimex ) {
+      _note = note;
+      _patient = patient;
+      _id = id;
+      _begin = begin;
+      _end = end;
+      _type = type;
+      _docTimeRel = docTimeRel;
+      _polarity = polarity;
+      _modality = modality;
+      _cuis = cuis;
+      _normalizedTimex = normalizedTimex;
+   }
+
+   public String getNote() {
+      return _note;
+   }
+
+   public String getPatient() {
+      return _patient;
+   }
+
+   public String getId() {
+      return _id;
+   }
+
+   public int getBegin() {
+      return _begin;
+   }
+
+   public int getEnd() {
+      return _end;
+   }
+
+   public String getType() {
+      return _type;
+   }
+
+   public String getDocTimeRel() {
+      return _docTimeRel;
+   }
+
+   public String getPolarity() {
+      return _polarity;
+   }
+
+   public String getModality() {
+      return _modality;
+   }
+
+   public String getCuis() {
+      return _cuis;
+   }
+
+   public String getNormalizedTimex() {
+      return _normalizedTimex;
+   }
+
+   /**
+    * @return the columns separated by tabs, null columns are empty.
+    */
+   public String toTsv() {
+      return String.join( "\t", nonNull( _note ), nonNull( _patient ), nonNull( _id ),
+                          Integer.toString( _begin ), Integer.toString( _end ), nonNull( _type ),
+                          nonNull( _docTimeRel ), nonNull( _polarity ), nonNull( _modality ),
+                          nonNull( _cuis ), nonNull( _normalizedTimex ) );
+   }
+
+   void write( final DataOutputStream output ) throws IOException {
+      writeString( output, _note );
+      writeString( output, _patient );
+      writeString( output, _id );
+      output.writeInt( _begin );
+      output.writeInt( _end );
+      writeString( output, _type );
+      writeString( output, _docTimeRel );
+      writeString( output, _polarity );
+      writeString( output, _modality );
+      writeString( output, _cuis );
+      writeString( output, _normalizedTimex );
+   }
+
+   static TemporalRow read( final DataInputStream input ) throws IOException {
+      return new TemporalRow( readString( input ), readString( input ), readString( input ),
+                              input.readInt(), input.readInt(), readString( input ),
+                              readString( input ), readString( input ), readString( input ),
+                              readString( input ), readString( input ) );
+   }
+
+   /**
+    * Strings are written as the length of their UTF-8 bytes followed by the bytes, null as length -1.
+    */
+   static private void writeString( final DataOutputStream output, final String text ) throws IOException {
+      if ( text == null ) {
+         output.writeInt( -1 );
+         return;
+      }
+      final byte[] bytes = text.getBytes( StandardCharsets.UTF_8 );
+      output.writeInt( bytes.length );
+      output.write( bytes );
+   }
+
+   static private String readString( final DataInputStream input ) throws IOException {
+      final int length = input.readInt();
+      if ( length < 0 ) {
+         return null;
+      }
+      final byte[] bytes = new byte[ length ];
+      input.readFully( bytes );
+      return new String( bytes, StandardCharsets.UTF_8 );
+   }
+
+   static private String nonNull( final String text ) {
+      return text == null ? "" : text;
+   }
+
+}
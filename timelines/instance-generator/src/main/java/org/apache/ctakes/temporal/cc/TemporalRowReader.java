@@ -0,0 +1,99 @@
+package org.apache.ctakes.temporal.cc;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams the rows of a file written by the {@link TemporalRowWriter}, one batch in memory at a time.
+ * A batch cut short by a crash ends the rows.
+ * <p>
+ * Run with the path of a row file to print its rows as tab separated values.
+ * </p>
+ *
+ * @author chip-nlp
+ */
+final public class TemporalRowReader implements Closeable {
+
+   private final DataInputStream _input;
+   private DataInputStream _batch;
+   private int _batchRemaining;
+
+   /**
+    * @param path file written by the {@link TemporalRowWriter}.
+    * @throws IOException if the file cannot be read or is not a row file.
+    */
+   public TemporalRowReader( final String path ) throws IOException {
+      _input = new DataInputStream( new BufferedInputStream( new FileInputStream( path ), 65536 ) );
+      if ( _input.readInt() != TemporalRowWriter.MAGIC ) {
+         _input.close();
+         throw new IOException( path + " is not a temporal row file" );
+      }
+      final int version = _input.readInt();
+      if ( version != TemporalRowWriter.VERSION ) {
+         _input.close();
+         throw new IOException( path + " has unsupported version " + version );
+      }
+   }
+
+   /**
+    * @return the next row or null if there are no more.
+    * @throws IOException if the file cannot be read.
+    */
+   public TemporalRow next() throws IOException {
+      while ( _batchRemaining == 0 ) {
+         if ( !nextBatch() ) {
+            return null;
+         }
+      }
+      _batchRemaining--;
+      return TemporalRow.read( _batch );
+   }
+
+   private boolean nextBatch() throws IOException {
+      try {
+         final int length = _input.readInt();
+         if ( length < 0 ) {
+            return false;
+         }
+         final byte[] compressed = new byte[ length ];
+         _input.readFully( compressed );
+         _batch = new DataInputStream( new GZIPInputStream( new ByteArrayInputStream( compressed ), 65536 ) );
+         _batchRemaining = _batch.readInt();
+         return true;
+      } catch ( EOFException eofE ) {
+         // end of the file, or a batch cut short
+         return false;
+      }
+   }
+
+   @Override
+   public void close() throws IOException {
+      _input.close();
+   }
+
+   /**
+    * @param args path of a row file.
+    * @throws IOException if the file cannot be read.
+    */
+   public static void main( final String... args ) throws IOException {
+      if ( args.length != 1 ) {
+         System.err.println( "Usage: TemporalRowReader <row file>" );
+         System.exit( 1 );
+      }
+      System.out.println( String.join( "\t", TemporalRow.COLUMNS ) );
+      try ( TemporalRowReader reader = new TemporalRowReader( args[ 0 ] ) ) {
+         TemporalRow row = reader.next();
+         while ( row != null ) {
+            System.out.println( row.toTsv() );
+            row = reader.next();
+         }
+      }
+   }
+
+}
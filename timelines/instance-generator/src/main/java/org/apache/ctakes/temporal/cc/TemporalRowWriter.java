@@ -0,0 +1,290 @@
+package org.apache.ctakes.temporal.cc;
+
+import org.apache.ctakes.core.pipeline.PipeBitInfo;
+import org.apache.ctakes.core.util.annotation.IdentifiedAnnotationUtil;
+import org.apache.ctakes.core.util.annotation.OntologyConceptUtil;
+import org.apache.ctakes.core.util.doc.DocIdUtil;
+import org.apache.ctakes.core.util.doc.SourceMetadataUtil;
+import org.apache.ctakes.temporal.norm.DocumentCreationTime;
+import org.apache.ctakes.typesystem.type.refsem.Event;
+import org.apache.ctakes.typesystem.type.refsem.EventProperties;
+import org.apache.ctakes.typesystem.type.refsem.Time;
+import org.apache.ctakes.typesystem.type.refsem.UmlsConcept;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.ctakes.typesystem.type.textsem.MedicationMention;
+import org.apache.ctakes.typesystem.type.textsem.TimeMention;
+import org.apache.log4j.Logger;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.clulab.timenorm.scfg.TimeSpan;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.apache.ctakes.core.pipeline.PipeBitInfo.TypeProduct.BASE_TOKEN;
+import static org.apache.ctakes.core.pipeline.PipeBitInfo.TypeProduct.DOCUMENT_ID_PREFIX;
+
+/**
+ * Writes one {@link TemporalRow} per event and time of every note to a single file for the whole run,
+ * instead of an xml file per note.  Entity ids, types and values are those of the {@link NormalizedEventTimeAnaforaWriter},
+ * except that times without a normalized form have a null normalized timex.
+ * <p>
+ * The file starts with a magic number and a version, followed by batches of rows.
+ * Each batch is the length of its compressed bytes followed by a gzip stream of the row count and the rows.
+ * Rows are buffered and a batch is appended once there are {@link #PARAM_BATCH_SIZE} of them,
+ * so a crash loses at most the rows of the batch being buffered.  Read it back with the {@link TemporalRowReader}.
+ * </p>
+ * Replicas writing to the same file share it, each appends its own batches whole.
+ *
+ * @author chip-nlp
+ */
+@PipeBitInfo(
+      name = "Temporal Row Writer",
+      description = "Writes Temporal Events and Times of all notes as rows in a single compressed file.",
+      role = PipeBitInfo.Role.WRITER,
+      usables = { DOCUMENT_ID_PREFIX, BASE_TOKEN }
+)
+final public class TemporalRowWriter extends JCasAnnotator_ImplBase {
+
+   static private final Logger LOGGER = Logger.getLogger( "TemporalRowWriter" );
+
+   static final int MAGIC = 0x54524f57; // TROW
+   static final int VERSION = 1;
+
+   static public final String PARAM_OUTPUT_FILE = "OutputFile";
+   @ConfigurationParameter(
+         name = PARAM_OUTPUT_FILE,
+         description = "The file to write rows to, replaced if it exists."
+   )
+   private String _outputFile;
+
+   static public final String PARAM_BATCH_SIZE = "BatchSize";
+   @ConfigurationParameter(
+         name = PARAM_BATCH_SIZE,
+         description = "Number of rows compressed and appended to the file at a time. Default is 10000.",
+         defaultValue = "10000",
+         mandatory = false
+   )
+   private int _batchSize;
+
+   static public final String PARAM_ONLY_TIME_EVENTS = "OnlyTemporalEvents";
+   @ConfigurationParameter(
+         name = PARAM_ONLY_TIME_EVENTS,
+         description = "Only use temporal events, not those created by dictionary lookup. Default is yes.",
+         defaultValue = "yes",
+         mandatory = false
+   )
+   private String _onlyTemporalEvents;
+
+   static private final Map<String, BatchFile> BATCH_FILES = new HashMap<>();
+
+   private BatchFile _batchFile;
+   private final List<TemporalRow> _rows = new ArrayList<>();
+   private long _rowCount;
+
+   @Override
+   public void initialize( final UimaContext context ) throws ResourceInitializationException {
+      super.initialize( context );
+      try {
+         _batchFile = BatchFile.open( _outputFile );
+      } catch ( IOException ioE ) {
+         throw new ResourceInitializationException( ioE );
+      }
+      LOGGER.info( "Writing temporal rows to " + _outputFile + " in batches of " + _batchSize );
+   }
+
+   private boolean onlyTemporalEvents() {
+      return _onlyTemporalEvents.equalsIgnoreCase( "yes" )
+             || _onlyTemporalEvents.equalsIgnoreCase( "true" );
+   }
+
+   @Override
+   public void process( final JCas jCas ) throws AnalysisEngineProcessException {
+      final String documentId = DocIdUtil.getDocumentIdForFile( jCas );
+      final String patient = SourceMetadataUtil.getPatientIdentifier( jCas );
+      final int nextIdNumber = addEventRows( jCas, documentId, patient, 1 );
+      addTimeRows( jCas, documentId, patient, nextIdNumber );
+      if ( _rows.size() >= _batchSize ) {
+         writeBatch();
+      }
+   }
+
+   @Override
+   public void collectionProcessComplete() throws AnalysisEngineProcessException {
+      super.collectionProcessComplete();
+      writeBatch();
+      LOGGER.info( "Wrote " + _rowCount + " temporal rows to " + _outputFile );
+   }
+
+   @Override
+   public void destroy() {
+      if ( _batchFile != null ) {
+         try {
+            writeBatch();
+         } catch ( AnalysisEngineProcessException aeE ) {
+            LOGGER.error( aeE.getMessage() );
+         }
+         _batchFile.release();
+         _batchFile = null;
+      }
+      super.destroy();
+   }
+
+   private void writeBatch() throws AnalysisEngineProcessException {
+      if ( _rows.isEmpty() ) {
+         return;
+      }
+      try {
+         final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         try ( DataOutputStream batch = new DataOutputStream( new GZIPOutputStream( bytes, 65536 ) ) ) {
+            batch.writeInt( _rows.size() );
+            for ( TemporalRow row : _rows ) {
+               row.write( batch );
+            }
+         }
+         _batchFile.append( bytes );
+      } catch ( IOException ioE ) {
+         throw new AnalysisEngineProcessException( ioE );
+      }
+      _rowCount += _rows.size();
+      _rows.clear();
+   }
+
+   /**
+    * Events are numbered as in the anafora writer, from 1 in order of their spans.
+    *
+    * @return the id number after the last event, with the anafora writer's gap.
+    */
+   private int addEventRows( final JCas jCas, final String documentId, final String patient, final int startId ) {
+      final List<EventMention> eventMentions = new ArrayList<>( JCasUtil.select( jCas, EventMention.class ) );
+      eventMentions.sort( Comparator.comparingInt( EventMention::getBegin )
+                                    .thenComparingInt( EventMention::getEnd ) );
+      final boolean onlyTemporalEvents = onlyTemporalEvents();
+      int idNumber = startId;
+      for ( EventMention eventMention : eventMentions ) {
+         if ( onlyTemporalEvents && !eventMention.getClass().equals( EventMention.class ) ) {
+            continue;
+         }
+         final String cuis = eventMention instanceof MedicationMention
+                             ? OntologyConceptUtil.getUmlsConcepts( eventMention )
+                                                  .stream()
+                                                  .map( UmlsConcept::getCui )
+                                                  .distinct()
+                                                  .collect( Collectors.joining( "," ) )
+                             : "";
+         final String polarity = IdentifiedAnnotationUtil.isNegated( eventMention ) ? "NEG" : "POS";
+         final Event event = eventMention.getEvent();
+         final EventProperties properties = event == null ? null : event.getProperties();
+         final String docTimeRel = properties == null ? "Overlap" : properties.getDocTimeRel();
+         final String modality = properties == null ? "UNDETERMINED" : properties.getContextualModality();
+         _rows.add( new TemporalRow( documentId, patient, getId( idNumber, documentId ),
+                                     eventMention.getBegin(), eventMention.getEnd(), "EVENT",
+                                     docTimeRel, polarity, modality, cuis, null ) );
+         idNumber++;
+      }
+      return idNumber + 1;
+   }
+
+   private void addTimeRows( final JCas jCas, final String documentId, final String patient, final int startId ) {
+      int idNumber = startId;
+      final TimeSpan DCT = DocumentCreationTime.get( jCas );
+      if ( DCT != null ) {
+         _rows.add( new TemporalRow( documentId, patient, getId( idNumber, documentId ), -1, -1, "DOCTIME",
+                                     null, null, null, null, DCT.timeMLValue() ) );
+         idNumber++;
+      }
+      final List<TimeMention> timeMentions = new ArrayList<>( JCasUtil.select( jCas, TimeMention.class ) );
+      timeMentions.sort( Comparator.comparingInt( TimeMention::getBegin )
+                                   .thenComparingInt( TimeMention::getEnd ) );
+      for ( TimeMention timeMention : timeMentions ) {
+         final String timeClass = timeMention.getTimeClass();
+         final String type = timeClass != null && ( timeClass.equals( "DOCTIME" ) || timeClass.equals( "SECTIONTIME" ) )
+                             ? timeClass : "TIMEX3";
+         final Time time = timeMention.getTime();
+         final String normalizedForm = time == null ? null : time.getNormalizedForm();
+         _rows.add( new TemporalRow( documentId, patient, getId( idNumber, documentId ),
+                                     timeMention.getBegin(), timeMention.getEnd(), type,
+                                     null, null, null, null, normalizedForm ) );
+         idNumber++;
+      }
+   }
+
+   static private String getId( final int idNumber, final String documentId ) {
+      return idNumber + "@e@" + documentId + "@system";
+   }
+
+
+   /**
+    * The output file, shared by every writer in the process that writes to the same path.
+    */
+   static private final class BatchFile {
+      private final String _key;
+      private final DataOutputStream _output;
+      private int _users;
+
+      static private BatchFile open( final String path ) throws IOException {
+         final String key = new File( path ).getCanonicalPath();
+         synchronized ( BATCH_FILES ) {
+            BatchFile batchFile = BATCH_FILES.get( key );
+            if ( batchFile == null ) {
+               batchFile = new BatchFile( key );
+               BATCH_FILES.put( key, batchFile );
+            }
+            batchFile._users++;
+            return batchFile;
+         }
+      }
+
+      private BatchFile( final String key ) throws IOException {
+         _key = key;
+         final File file = new File( key );
+         if ( file.getParentFile() != null ) {
+            file.getParentFile().mkdirs();
+         }
+         _output = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 65536 ) );
+         _output.writeInt( MAGIC );
+         _output.writeInt( VERSION );
+         _output.flush();
+      }
+
+      synchronized private void append( final ByteArrayOutputStream batch ) throws IOException {
+         _output.writeInt( batch.size() );
+         batch.writeTo( _output );
+         _output.flush();
+      }
+
+      private void release() {
+         synchronized ( BATCH_FILES ) {
+            _users--;
+            if ( _users > 0 ) {
+               return;
+            }
+            BATCH_FILES.remove( _key );
+         }
+         synchronized ( this ) {
+            try {
+               _output.close();
+            } catch ( IOException ioE ) {
+               LOGGER.error( "Could not close " + _key + " : " + ioE.getMessage() );
+            }
+         }
+      }
+   }
+
+}
@@ -0,0 +1,57 @@
+package org.apache.ctakes.temporal.norm;
+
+import org.apache.ctakes.core.util.doc.SourceMetadataUtil;
+import org.apache.uima.jcas.JCas;
+import org.clulab.timenorm.scfg.TimeSpan;
+
+import java.time.DateTimeException;
+
+/**
+ * The document creation time of a note, the anchor of its time expressions.
+ * It is the source original date, either YYYY-MM-DD as properly generated
+ * or starting with YYYYMMDD as generated by the DocTimeApproximator.
+ *
+ * @author chip-nlp
+ */
+final public class DocumentCreationTime {
+
+    private DocumentCreationTime() {
+    }
+
+    /**
+     * @param jCas note.
+     * @return the document creation time of the note, null if it is missing or malformed.
+     */
+    static public TimeSpan get( final JCas jCas ) {
+        return parse( SourceMetadataUtil.getOrCreateSourceData( jCas ).getSourceOriginalDate() );
+    }
+
+    /**
+     * @param docTime source original date.
+     * @return the document creation time, null if the date is missing or malformed.
+     */
+    static public TimeSpan parse( final String docTime ) {
+        if ( docTime == null || docTime.isEmpty() ) {
+            return null;
+        }
+        final String[] docTimeComponents = docTime.split( "-" );
+        try {
+            if ( docTimeComponents.length == 3 ) {
+                // properly generated
+                return TimeSpan.of( Integer.parseInt( docTimeComponents[ 0 ] ),
+                                    Integer.parseInt( docTimeComponents[ 1 ] ),
+                                    Integer.parseInt( docTimeComponents[ 2 ] ) );
+            }
+            if ( docTime.length() < 8 ) {
+                return null;
+            }
+            // DocTimeApproximator generated
+            return TimeSpan.of( Integer.parseInt( docTime.substring( 0, 4 ) ),
+                                Integer.parseInt( docTime.substring( 4, 6 ) ),
+                                Integer.parseInt( docTime.substring( 6, 8 ) ) );
+        } catch ( NumberFormatException | DateTimeException e ) {
+            return null;
+        }
+    }
+
+}
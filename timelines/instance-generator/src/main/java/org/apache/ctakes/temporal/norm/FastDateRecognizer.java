@@ -0,0 +1,278 @@
+package org.apache.ctakes.temporal.norm;
+
+import java.time.Month;
+import java.time.Year;
+
+/**
+ * Recognizes the common absolute date formats of clinical notes with a single pass over the characters,
+ * so that they never need the TimeNorm chart parse.
+ * Recognized formats are
+ * <ul>
+ *    <li>ISO dates, e.g. 2019-03-05</li>
+ *    <li>M/D/Y and M-D-Y dates with 2 or 4 digit years, e.g. 3/5/19 or 03-05-2019.
+ *    These notes were all generated at American hospitals and therefore modulo mistakes
+ *    will all use the American convention, 2 digit years are taken to be in the 2000s.</li>
+ *    <li>Month D, YYYY, e.g. March 5, 2019 or Mar. 5th 2019</li>
+ *    <li>D Month YYYY, e.g. 5 Mar 2019 or 5-Mar-2019</li>
+ *    <li>bare years from 1900 to 2100</li>
+ *    <li>month and year, e.g. March 2019, Mar, 2019, 03/2019 or 2019-03</li>
+ * </ul>
+ * Values are formatted as TimeNorm formats them, YYYY-MM-DD, YYYY-MM or YYYY,
+ * and are the values TimeNorm gives the same text.
+ * TimeNorm has no rule for D Month YYYY, MM/YYYY or YYYY-MM, those only get a value here.
+ * Anything else, including invalid dates, is left for TimeNorm.
+ *
+ * @author chip-nlp
+ */
+final public class FastDateRecognizer {
+
+    static private final String[] MONTHS = { "january", "february", "march", "april", "may", "june",
+                                             "july", "august", "september", "october", "november", "december" };
+
+    static private final int MAX_TOKENS = 4;
+    static private final int MAX_DIGITS = 4;
+
+    static private final int NUMBER = 1;
+    static private final int MONTH = 2;
+
+    static private final char NO_SEPARATOR = 0;
+    static private final char SPACE = ' ';
+
+    private FastDateRecognizer() {
+    }
+
+    /**
+     * @param timex covered text of a time mention.
+     * @return TimeML value of the date or null if the timex is not in a recognized format.
+     */
+    static public String recognize( final CharSequence timex ) {
+        // token kind, numeric value (month number for month names), number of digits, separator preceding the token
+        final int[] kinds = new int[ MAX_TOKENS ];
+        final int[] values = new int[ MAX_TOKENS ];
+        final int[] digits = new int[ MAX_TOKENS ];
+        final boolean[] ordinals = new boolean[ MAX_TOKENS ];
+        final char[] separators = new char[ MAX_TOKENS ];
+        int count = 0;
+        char separator = NO_SEPARATOR;
+        final int length = timex.length();
+        int i = 0;
+        while ( i < length ) {
+            final char c = timex.charAt( i );
+            if ( Character.isWhitespace( c ) ) {
+                if ( separator == NO_SEPARATOR ) {
+                    separator = SPACE;
+                }
+                i++;
+                continue;
+            }
+            if ( c == '/' || c == '-' || c == ',' || c == '.' ) {
+                if ( count == 0 || ( separator != NO_SEPARATOR && separator != SPACE ) ) {
+                    return null;
+                }
+                separator = c;
+                i++;
+                continue;
+            }
+            if ( count == MAX_TOKENS || ( count > 0 && separator == NO_SEPARATOR ) ) {
+                return null;
+            }
+            final int start = i;
+            if ( isDigit( c ) ) {
+                int value = 0;
+                while ( i < length && isDigit( timex.charAt( i ) ) ) {
+                    value = value * 10 + ( timex.charAt( i ) - '0' );
+                    i++;
+                }
+                if ( i - start > MAX_DIGITS ) {
+                    return null;
+                }
+                kinds[ count ] = NUMBER;
+                values[ count ] = value;
+                digits[ count ] = i - start;
+                if ( i < length && Character.isLetter( timex.charAt( i ) ) ) {
+                    // 5th, 1st, 2nd, 3rd
+                    if ( i + 2 > length || !isOrdinalSuffix( timex, i ) ) {
+                        return null;
+                    }
+                    ordinals[ count ] = true;
+                    i += 2;
+                }
+            } else if ( Character.isLetter( c ) ) {
+                while ( i < length && Character.isLetter( timex.charAt( i ) ) ) {
+                    i++;
+                }
+                final int month = getMonth( timex, start, i );
+                if ( month == 0 ) {
+                    return null;
+                }
+                kinds[ count ] = MONTH;
+                values[ count ] = month;
+            } else {
+                return null;
+            }
+            separators[ count ] = separator;
+            separator = NO_SEPARATOR;
+            count++;
+        }
+        if ( separator != NO_SEPARATOR && separator != SPACE ) {
+            // trailing punctuation
+            return null;
+        }
+        for ( int t = 0; t < count; t++ ) {
+            // periods only follow abbreviated month names, ordinals only follow month names
+            if ( separators[ t ] == '.' && kinds[ t - 1 ] != MONTH ) {
+                return null;
+            }
+            if ( ordinals[ t ] && ( t == 0 || kinds[ t - 1 ] != MONTH ) ) {
+                return null;
+            }
+        }
+        switch ( count ) {
+            case 1:
+                return recognizeYear( kinds, values, digits );
+            case 2:
+                return recognizeMonthYear( kinds, values, digits, separators );
+            case 3:
+                return recognizeDate( kinds, values, digits, separators );
+            default:
+                return null;
+        }
+    }
+
+    static private String recognizeYear( final int[] kinds, final int[] values, final int[] digits ) {
+        if ( kinds[ 0 ] == NUMBER && digits[ 0 ] == 4 && values[ 0 ] >= 1900 && values[ 0 ] <= 2100 ) {
+            return format( values[ 0 ], 0, 0 );
+        }
+        return null;
+    }
+
+    static private String recognizeMonthYear( final int[] kinds, final int[] values, final int[] digits,
+                                              final char[] separators ) {
+        if ( kinds[ 0 ] == NUMBER && digits[ 0 ] == 4 && kinds[ 1 ] == NUMBER && digits[ 1 ] == 2
+             && separators[ 1 ] == '-' ) {
+            // 2019-03
+            return formatDate( values[ 0 ], values[ 1 ], 0 );
+        }
+        if ( kinds[ 1 ] != NUMBER || digits[ 1 ] != 4 ) {
+            return null;
+        }
+        if ( kinds[ 0 ] == MONTH && ( separators[ 1 ] == SPACE || separators[ 1 ] == ',' || separators[ 1 ] == '.' ) ) {
+            // March 2019 , Mar, 2019 , Mar. 2019
+            return formatDate( values[ 1 ], values[ 0 ], 0 );
+        }
+        if ( kinds[ 0 ] == NUMBER && digits[ 0 ] <= 2 && separators[ 1 ] == '/' ) {
+            // 03/2019
+            return formatDate( values[ 1 ], values[ 0 ], 0 );
+        }
+        return null;
+    }
+
+    static private String recognizeDate( final int[] kinds, final int[] values, final int[] digits,
+                                         final char[] separators ) {
+        if ( kinds[ 0 ] == NUMBER && kinds[ 1 ] == NUMBER && kinds[ 2 ] == NUMBER ) {
+            if ( digits[ 0 ] == 4 && digits[ 1 ] <= 2 && digits[ 2 ] <= 2
+                 && separators[ 1 ] == '-' && separators[ 2 ] == '-' ) {
+                // 2019-03-05
+                return formatDate( values[ 0 ], values[ 1 ], values[ 2 ] );
+            }
+            if ( digits[ 0 ] <= 2 && digits[ 1 ] <= 2 && ( digits[ 2 ] == 2 || digits[ 2 ] == 4 )
+                 && ( separators[ 1 ] == '/' || separators[ 1 ] == '-' ) && separators[ 2 ] == separators[ 1 ] ) {
+                // 3/5/19 , 03-05-2019
+                return formatDate( digits[ 2 ] == 2 ? values[ 2 ] + 2000 : values[ 2 ], values[ 0 ], values[ 1 ] );
+            }
+            return null;
+        }
+        if ( digits[ 2 ] != 4 || kinds[ 2 ] != NUMBER ) {
+            return null;
+        }
+        if ( kinds[ 0 ] == MONTH && kinds[ 1 ] == NUMBER && digits[ 1 ] <= 2
+             && ( separators[ 1 ] == SPACE || separators[ 1 ] == '.' )
+             && ( separators[ 2 ] == SPACE || separators[ 2 ] == ',' ) ) {
+            // March 5, 2019 , Mar. 5th 2019
+            return formatDate( values[ 2 ], values[ 0 ], values[ 1 ] );
+        }
+        if ( kinds[ 0 ] == NUMBER && digits[ 0 ] <= 2 && kinds[ 1 ] == MONTH
+             && ( ( separators[ 1 ] == SPACE && ( separators[ 2 ] == SPACE || separators[ 2 ] == ',' ) )
+                  || ( separators[ 1 ] == '-' && separators[ 2 ] == '-' ) ) ) {
+            // 5 Mar 2019 , 5-Mar-2019
+            return formatDate( values[ 2 ], values[ 1 ], values[ 0 ] );
+        }
+        return null;
+    }
+
+    /**
+     * @param day day of the month, 0 for a month and year.
+     * @return the formatted date or null if it does not exist.
+     */
+    static private String formatDate( final int year, final int month, final int day ) {
+        if ( year < 1000 || month < 1 || month > 12 ) {
+            return null;
+        }
+        if ( day != 0 && ( day < 1 || day > Month.of( month ).length( Year.isLeap( year ) ) ) ) {
+            return null;
+        }
+        return format( year, month, day );
+    }
+
+    static private String format( final int year, final int month, final int day ) {
+        final char[] chars = new char[ month == 0 ? 4 : ( day == 0 ? 7 : 10 ) ];
+        chars[ 0 ] = (char)( '0' + year / 1000 );
+        chars[ 1 ] = (char)( '0' + year / 100 % 10 );
+        chars[ 2 ] = (char)( '0' + year / 10 % 10 );
+        chars[ 3 ] = (char)( '0' + year % 10 );
+        if ( month != 0 ) {
+            chars[ 4 ] = '-';
+            chars[ 5 ] = (char)( '0' + month / 10 );
+            chars[ 6 ] = (char)( '0' + month % 10 );
+        }
+        if ( day != 0 ) {
+            chars[ 7 ] = '-';
+            chars[ 8 ] = (char)( '0' + day / 10 );
+            chars[ 9 ] = (char)( '0' + day % 10 );
+        }
+        return new String( chars );
+    }
+
+    /**
+     * @return month number for a full or abbreviated (3 letters, or Sept) month name, 0 if the word is not a month.
+     */
+    static private int getMonth( final CharSequence text, final int start, final int end ) {
+        final int length = end - start;
+        if ( length < 3 ) {
+            return 0;
+        }
+        for ( int m = 0; m < MONTHS.length; m++ ) {
+            final String month = MONTHS[ m ];
+            if ( length == 3 || length == month.length() || ( m == 8 && length == 4 ) ) {
+                if ( length <= month.length() && regionMatches( text, start, month, length ) ) {
+                    return m + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    static private boolean regionMatches( final CharSequence text, final int start, final String word, final int length ) {
+        for ( int i = 0; i < length; i++ ) {
+            if ( Character.toLowerCase( text.charAt( start + i ) ) != word.charAt( i ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static private boolean isOrdinalSuffix( final CharSequence text, final int start ) {
+        if ( start + 2 < text.length() && Character.isLetter( text.charAt( start + 2 ) ) ) {
+            return false;
+        }
+        final char first = Character.toLowerCase( text.charAt( start ) );
+        final char second = Character.toLowerCase( text.charAt( start + 1 ) );
+        return ( first == 's' && second == 't' ) || ( first == 'n' && second == 'd' )
+               || ( first == 'r' && second == 'd' ) || ( first == 't' && second == 'h' );
+    }
+
+    static private boolean isDigit( final char c ) {
+        return c >= '0' && c <= '9';
+    }
+
+}
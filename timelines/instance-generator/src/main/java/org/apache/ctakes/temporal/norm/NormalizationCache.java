@@ -0,0 +1,128 @@
+package org.apache.ctakes.temporal.norm;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.clulab.timenorm.scfg.TimeSpan;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, thread-safe cache of normalized TimeML values shared across documents.
+ * Expressions whose value depends on the anchor are keyed by their text and the anchor,
+ * while absolute expressions (e.g. dates from the {@link FastDateRecognizer}) live in a separate anchor-independent tier.
+ * Keys are whitespace-normalized so that "3  weeks\nago" and "3 weeks ago" share an entry,
+ * which is safe because the TimeNorm tokenizer ignores whitespace runs.
+ * Entries are evicted least-recently-used once a tier is full, and optionally after going unused for a while.
+ *
+ * @author chip-nlp
+ */
+final public class NormalizationCache {
+
+    // separates the timex text from the anchor in anchored keys, can't occur in a timex
+    static private final char ANCHOR_SEPARATOR = '\u0001';
+
+    private final Cache<String, String> _absolute;
+    private final Cache<String, String> _anchored;
+
+    /**
+     * @param maximumSize       maximum number of entries in each tier.
+     * @param maximumAgeSeconds entries unused for this many seconds are evicted, 0 for no age limit.
+     */
+    public NormalizationCache( final long maximumSize, final long maximumAgeSeconds ) {
+        _absolute = buildCache( maximumSize, maximumAgeSeconds );
+        _anchored = buildCache( maximumSize, maximumAgeSeconds );
+    }
+
+    static private Cache<String, String> buildCache( final long maximumSize, final long maximumAgeSeconds ) {
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                                                                 .maximumSize( maximumSize )
+                                                                 .recordStats();
+        if ( maximumAgeSeconds > 0 ) {
+            builder.expireAfterAccess( maximumAgeSeconds, TimeUnit.SECONDS );
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param timex raw text of a time expression.
+     * @param DCT   anchor for relative expressions, may be null.
+     * @return the cached TimeML value, checking the absolute tier first, or null if neither tier has the timex.
+     */
+    public String get( final String timex, final TimeSpan DCT ) {
+        final String key = normalizeWhitespace( timex );
+        final String absolute = _absolute.getIfPresent( key );
+        if ( absolute != null ) {
+            return absolute;
+        }
+        return _anchored.getIfPresent( anchoredKey( key, DCT ) );
+    }
+
+    /**
+     * @param timex   raw text of a time expression whose value does not depend on the anchor.
+     * @param timeML  normalized value.
+     */
+    public void putAbsolute( final String timex, final String timeML ) {
+        _absolute.put( normalizeWhitespace( timex ), timeML );
+    }
+
+    /**
+     * @param timex  raw text of a time expression.
+     * @param DCT    anchor the value was resolved against, may be null.
+     * @param timeML normalized value.
+     */
+    public void putAnchored( final String timex, final TimeSpan DCT, final String timeML ) {
+        _anchored.put( anchoredKey( normalizeWhitespace( timex ), DCT ), timeML );
+    }
+
+    /**
+     * @return hit, miss and eviction counts for both tiers.
+     */
+    public String getStats() {
+        return "absolute tier " + toString( _absolute.stats(), _absolute.size() )
+               + " , anchored tier " + toString( _anchored.stats(), _anchored.size() );
+    }
+
+    static private String toString( final CacheStats stats, final long size ) {
+        return "[ size " + size
+               + " hits " + stats.hitCount()
+               + " misses " + stats.missCount()
+               + " evictions " + stats.evictionCount() + " ]";
+    }
+
+    /**
+     * @param timex raw text of a time expression.
+     * @param DCT   anchor for relative expressions, may be null.
+     * @return key of the timex and anchor as used by the anchored tier and the {@link PersistentNormalizationStore}.
+     */
+    static String storeKey( final String timex, final TimeSpan DCT ) {
+        return anchoredKey( normalizeWhitespace( timex ), DCT );
+    }
+
+    static private String anchoredKey( final String key, final TimeSpan DCT ) {
+        return DCT == null ? key : key + ANCHOR_SEPARATOR + DCT.timeMLValue();
+    }
+
+    /**
+     * @param text -
+     * @return the text trimmed with every run of whitespace collapsed to a single space.
+     */
+    static String normalizeWhitespace( final String text ) {
+        final StringBuilder sb = new StringBuilder( text.length() );
+        boolean inWhitespace = false;
+        for ( int i = 0; i < text.length(); i++ ) {
+            final char c = text.charAt( i );
+            if ( Character.isWhitespace( c ) ) {
+                inWhitespace = true;
+                continue;
+            }
+            if ( inWhitespace && sb.length() > 0 ) {
+                sb.append( ' ' );
+            }
+            inWhitespace = false;
+            sb.append( c );
+        }
+        return sb.toString();
+    }
+
+}
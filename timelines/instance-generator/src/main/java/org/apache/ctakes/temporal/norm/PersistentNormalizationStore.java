@@ -0,0 +1,218 @@
+package org.apache.ctakes.temporal.norm;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only key/value file of (timex, DCT) to TimeML normalizations that survives between runs.
+ * Timexes that timed out or blew up TimeNorm are stored as failure markers
+ * so that they are not handed to TimeNorm again.
+ * Values and failures are only reused while the grammar and parser bounds stay the same.
+ * <p>
+ * The file is memory-mapped and read once when opened, new entries are appended as they are discovered.
+ * Each record is a kind byte followed by the length-prefixed UTF-8 key and value.
+ * A version record holds the parser version that the records after it were written with,
+ * values and failures written with any other version are ignored and normalized again.
+ * A record cut short by a crash is dropped and overwritten by the next append.
+ * </p>
+ * One store is shared by every component in the process that opens the same file.
+ *
+ * @author chip-nlp
+ */
+final public class PersistentNormalizationStore {
+
+    static private final Logger LOGGER = Logger.getLogger( "PersistentNormalizationStore" );
+
+    static private final byte VALUE = 1;
+    static private final byte FAILURE = 2;
+    static private final byte VERSION = 3;
+
+    static private final Map<String, PersistentNormalizationStore> STORES = new ConcurrentHashMap<>();
+
+    private final File _file;
+    private final String _version;
+    private final Map<String, String> _values = new ConcurrentHashMap<>();
+    private final Set<String> _failures = ConcurrentHashMap.newKeySet();
+    private final DataOutputStream _appender;
+
+    /**
+     * @param path    path of the store file, created if it does not exist.
+     * @param version version of the parser, e.g. {@link org.clulab.timenorm.scfg.TemporalExpressionParser#version()}.
+     * @return the store for the file, shared with every other caller in this process.
+     * @throws IOException if the file cannot be read or opened for appending,
+     *                     or it is already open in this process for another parser version.
+     */
+    static public PersistentNormalizationStore open( final String path, final String version ) throws IOException {
+        final String key = new File( path ).getCanonicalPath();
+        synchronized ( STORES ) {
+            PersistentNormalizationStore store = STORES.get( key );
+            if ( store == null ) {
+                store = new PersistentNormalizationStore( new File( key ), version );
+                STORES.put( key, store );
+            } else if ( !store._version.equals( version ) ) {
+                throw new IOException( "Normalization store " + key + " is already open for parser version "
+                                       + store._version + " , not " + version );
+            }
+            return store;
+        }
+    }
+
+    private PersistentNormalizationStore( final File file, final String version ) throws IOException {
+        _file = file;
+        _version = version;
+        final boolean current = load();
+        _appender = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( _file, true ), 65536 ) );
+        if ( !current ) {
+            // records appended from now on belong to this version
+            append( VERSION, "", _version );
+        }
+        LOGGER.info( "Loaded " + _values.size() + " normalizations and " + _failures.size()
+                     + " known failures for parser version " + _version + " from " + _file );
+    }
+
+    /**
+     * Reads the file and drops any incomplete record at its end.
+     *
+     * @return true if the last version record in the file is the version of this store.
+     */
+    private boolean load() throws IOException {
+        if ( !_file.exists() || _file.length() == 0 ) {
+            return false;
+        }
+        boolean current = false;
+        int staleRecords = 0;
+        long validLength = 0;
+        try ( RandomAccessFile raf = new RandomAccessFile( _file, "r" );
+              FileChannel channel = raf.getChannel() ) {
+            final MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            try {
+                while ( buffer.hasRemaining() ) {
+                    final byte kind = buffer.get();
+                    final String key = readString( buffer );
+                    final String value = readString( buffer );
+                    if ( kind == VALUE || kind == FAILURE ) {
+                        if ( !current ) {
+                            staleRecords++;
+                        } else if ( kind == VALUE ) {
+                            _values.put( key, value );
+                            _failures.remove( key );
+                        } else {
+                            _failures.add( key );
+                        }
+                    } else if ( kind == VERSION ) {
+                        current = _version.equals( value );
+                    } else {
+                        break;
+                    }
+                    validLength = buffer.position();
+                }
+            } catch ( BufferUnderflowException | IllegalArgumentException incomplete ) {
+                // the last record was cut short
+            }
+        }
+        try ( RandomAccessFile raf = new RandomAccessFile( _file, "rw" ) ) {
+            if ( raf.length() > validLength ) {
+                LOGGER.warn( "Dropping " + ( raf.length() - validLength ) + " bytes of incomplete records from " + _file );
+                raf.setLength( validLength );
+            }
+        }
+        if ( staleRecords > 0 ) {
+            LOGGER.info( "Ignoring " + staleRecords + " normalizations and failures recorded with another parser version in "
+                         + _file );
+        }
+        return current;
+    }
+
+    static private String readString( final MappedByteBuffer buffer ) {
+        final int length = buffer.getInt();
+        if ( length < 0 || length > buffer.remaining() ) {
+            throw new IllegalArgumentException( "Bad record length " + length );
+        }
+        final byte[] bytes = new byte[ length ];
+        buffer.get( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * @param key key from {@link NormalizationCache#storeKey(String, org.clulab.timenorm.scfg.TimeSpan)}.
+     * @return the stored TimeML value or null if there is none.
+     */
+    public String get( final String key ) {
+        return _values.get( key );
+    }
+
+    /**
+     * @param key key from {@link NormalizationCache#storeKey(String, org.clulab.timenorm.scfg.TimeSpan)}.
+     * @return true if TimeNorm is known to fail on the key.
+     */
+    public boolean isKnownFailure( final String key ) {
+        return _failures.contains( key );
+    }
+
+    /**
+     * @param key    key from {@link NormalizationCache#storeKey(String, org.clulab.timenorm.scfg.TimeSpan)}.
+     * @param timeML normalized value.
+     */
+    public void put( final String key, final String timeML ) {
+        if ( timeML.equals( _values.put( key, timeML ) ) ) {
+            return;
+        }
+        append( VALUE, key, timeML );
+    }
+
+    /**
+     * @param key key from {@link NormalizationCache#storeKey(String, org.clulab.timenorm.scfg.TimeSpan)}
+     *            that TimeNorm timed out on or blew up on.  Ordinary parse failures are not worth keeping across runs.
+     */
+    public void putFailure( final String key ) {
+        if ( _failures.add( key ) ) {
+            append( FAILURE, key, "" );
+        }
+    }
+
+    synchronized private void append( final byte kind, final String key, final String value ) {
+        try {
+            final byte[] keyBytes = key.getBytes( StandardCharsets.UTF_8 );
+            final byte[] valueBytes = value.getBytes( StandardCharsets.UTF_8 );
+            _appender.writeByte( kind );
+            _appender.writeInt( keyBytes.length );
+            _appender.write( keyBytes );
+            _appender.writeInt( valueBytes.length );
+            _appender.write( valueBytes );
+        } catch ( IOException ioE ) {
+            LOGGER.error( "Could not append to normalization store " + _file + " : " + ioE.getMessage() );
+        }
+    }
+
+    /**
+     * Writes any buffered entries to the file.
+     */
+    synchronized public void flush() {
+        try {
+            _appender.flush();
+        } catch ( IOException ioE ) {
+            LOGGER.error( "Could not flush normalization store " + _file + " : " + ioE.getMessage() );
+        }
+    }
+
+    /**
+     * @return number of stored normalizations and known failures.
+     */
+    public String getStats() {
+        return "[ normalizations " + _values.size() + " known failures " + _failures.size() + " ]";
+    }
+
+}
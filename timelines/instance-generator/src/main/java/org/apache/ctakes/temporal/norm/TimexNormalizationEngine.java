@@ -0,0 +1,372 @@
+package org.apache.ctakes.temporal.norm;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+import org.clulab.timenorm.scfg.Temporal;
+import org.clulab.timenorm.scfg.TemporalExpressionParser;
+import org.clulab.timenorm.scfg.TimeSpan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Normalizes time expressions with TimeNorm on a bounded pool of workers.
+ * All the timexes of a document are submitted at once and joined before returning,
+ * and every TimeNorm call gets its own deadline counted from when a worker picks it up,
+ * so one slow parse no longer holds up the rest of the document.
+ * Results are kept in a {@link NormalizationCache} so repeated expressions are only parsed once per anchor,
+ * and optionally in a {@link PersistentNormalizationStore} so they are only parsed once across runs.
+ * Expressions that time out or blow up TimeNorm are put in a {@link TimexQuarantine} for the rest of the run,
+ * other failures are only remembered for the same anchor.
+ * A timed out call is cancelled, and its worker is replaced until the abandoned parse notices and stops.
+ *
+ * @author chip-nlp
+ */
+final public class TimexNormalizationEngine {
+
+    static private final Logger LOGGER = Logger.getLogger( "TimexNormalizationEngine" );
+
+    // how long to wait between checks on a call that no worker has picked up yet
+    static private final long QUEUE_POLL_MILLIS = 50;
+
+    private final ThreadPoolExecutor _executor;
+    private final int _workers;
+    private final long _timeoutNanos;
+    private final int _timeout;
+    private final TemporalExpressionParser _normalizer;
+    private final NormalizationCache _cache;
+    private final PersistentNormalizationStore _store;
+    private final TimexQuarantine _quarantine = new TimexQuarantine();
+    private final Runnable _retireWorker = this::retireWorker;
+    private final AtomicLong _fastPathHits = new AtomicLong();
+    private final AtomicLong _fallbacks = new AtomicLong();
+    // workers standing in for those stuck in abandoned parses, guarded by this
+    private int _standIns = 0;
+
+    /**
+     * @param threads number of TimeNorm workers.
+     * @param timeout seconds allowed for a single TimeNorm call.
+     * @param cache   cache of previous normalizations.
+     */
+    public TimexNormalizationEngine( final int threads, final int timeout, final NormalizationCache cache ) {
+        this( threads, timeout, cache, null );
+    }
+
+    /**
+     * @param threads number of TimeNorm workers.
+     * @param timeout seconds allowed for a single TimeNorm call.
+     * @param cache   cache of previous normalizations.
+     * @param store   normalizations and known failures from previous runs, may be null.
+     *                Must have been opened with the {@link TemporalExpressionParser#version()} of the shared parser.
+     */
+    public TimexNormalizationEngine( final int threads, final int timeout, final NormalizationCache cache,
+                                     final PersistentNormalizationStore store ) {
+        this( threads, timeout, cache, store, TemporalExpressionParser.shared( "en" ) );
+    }
+
+    /**
+     * @param threads    number of TimeNorm workers.
+     * @param timeout    seconds allowed for a single TimeNorm call.
+     * @param cache      cache of previous normalizations.
+     * @param store      normalizations and known failures from previous runs, may be null.
+     *                   Must have been opened with the {@link TemporalExpressionParser#version()} of the normalizer.
+     * @param normalizer TimeNorm parser, it keeps no per-parse state so one instance can serve every worker.
+     */
+    public TimexNormalizationEngine( final int threads, final int timeout, final NormalizationCache cache,
+                                     final PersistentNormalizationStore store,
+                                     final TemporalExpressionParser normalizer ) {
+        _normalizer = normalizer;
+        _cache = cache;
+        _store = store;
+        _workers = Math.max( 1, threads );
+        _executor = new ThreadPoolExecutor(
+                _workers, _workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat( "TimeNorm-%d" ).setDaemon( true ).build() );
+        _timeout = timeout;
+        _timeoutNanos = TimeUnit.SECONDS.toNanos( timeout );
+    }
+
+    /**
+     * @param timexes  covered text of the time mentions, in document order.
+     * @param DCT      document creation time used to anchor relative expressions, may be null.
+     * @param fileName name of the document, for logging.
+     * @return TimeML value for each timex, in the same order, or an empty string where normalization failed.
+     */
+    public List<String> normalizeAll( final List<String> timexes, final TimeSpan DCT, final String fileName ) {
+        final List<String> normalized = new ArrayList<>( timexes.size() );
+        // the same expression often occurs several times in a note, only send it to TimeNorm once
+        final Map<String, TimedCall> calls = new HashMap<>();
+        final Map<String, Future<String>> futures = new HashMap<>();
+        for ( String timex : timexes ) {
+            final String known = getKnownTimeML( timex, DCT );
+            if ( known != null ) {
+                normalized.add( known );
+                continue;
+            }
+            normalized.add( null );
+            if ( !calls.containsKey( timex ) ) {
+                final TimedCall call = new TimedCall( _normalizer, timex, DCT, _retireWorker );
+                calls.put( timex, call );
+                _fallbacks.incrementAndGet();
+                futures.put( timex, _executor.submit( call ) );
+            }
+        }
+        final Map<String, String> parsed = new HashMap<>( calls.size() );
+        for ( Map.Entry<String, TimedCall> call : calls.entrySet() ) {
+            parsed.put( call.getKey(), await( futures.get( call.getKey() ), call.getValue(), fileName ) );
+        }
+        for ( int i = 0; i < timexes.size(); i++ ) {
+            if ( normalized.get( i ) == null ) {
+                normalized.set( i, parsed.get( timexes.get( i ) ) );
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * @param timex    covered text of a time mention.
+     * @param DCT      document creation time used to anchor relative expressions, may be null.
+     * @param fileName name of the document, for logging.
+     * @return TimeML value for the timex or an empty string if normalization failed.
+     */
+    public String normalize( final String timex, final TimeSpan DCT, final String fileName ) {
+        final String known = getKnownTimeML( timex, DCT );
+        if ( known != null ) {
+            return known;
+        }
+        final TimedCall call = new TimedCall( _normalizer, timex, DCT, _retireWorker );
+        _fallbacks.incrementAndGet();
+        return await( _executor.submit( call ), call, fileName );
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the cache.
+     */
+    public String getCacheStats() {
+        return _store == null ? _cache.getStats() : _cache.getStats() + " , store " + _store.getStats();
+    }
+
+    /**
+     * @return number of timexes resolved by the {@link FastDateRecognizer} and number handed to TimeNorm.
+     */
+    public String getRecognizerStats() {
+        return "[ fast path " + _fastPathHits.get() + " TimeNorm fallback " + _fallbacks.get() + " ]";
+    }
+
+    /**
+     * Writes any new entries to the persistent store.
+     */
+    public void flush() {
+        if ( _store != null ) {
+            _store.flush();
+        }
+    }
+
+    /**
+     * Logs the expressions quarantined during the run.
+     */
+    public void logQuarantine() {
+        _quarantine.log();
+    }
+
+    /**
+     * Stops the workers, abandoning any TimeNorm calls still running.
+     */
+    public void shutdown() {
+        _executor.shutdownNow();
+        flush();
+    }
+
+    private String await( final Future<String> future, final TimedCall call, final String fileName ) {
+        try {
+            String timeML = null;
+            while ( timeML == null ) {
+                final long started = call.getStarted();
+                if ( started == 0 ) {
+                    // still queued, the deadline has not started ticking
+                    try {
+                        timeML = future.get( QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS );
+                    } catch ( TimeoutException queued ) {
+                        // keep waiting
+                    }
+                } else {
+                    timeML = future.get( Math.max( 0, started + _timeoutNanos - System.nanoTime() ), TimeUnit.NANOSECONDS );
+                }
+            }
+            _cache.putAnchored( call.getTimex(), call.getDCT(), timeML );
+            if ( _store != null ) {
+                _store.put( NormalizationCache.storeKey( call.getTimex(), call.getDCT() ), timeML );
+            }
+            return timeML;
+        } catch ( TimeoutException tE ) {
+            future.cancel( true );
+            abandon( call );
+            quarantine( call, "timed out after " + _timeout + " seconds" );
+            LOGGER.error( fileName + ": Timenorm could not parse timex " + call.getTimex() + " in " + _timeout + " seconds or less" );
+        } catch ( ExecutionException eE ) {
+            if ( eE.getCause() instanceof Error ) {
+                // e.g. StackOverflowError or OutOfMemoryError from a chart that blew up
+                quarantine( call, "blew up with " + eE.getCause().getClass().getSimpleName() );
+                LOGGER.error( fileName + ": Timenorm blew up on timex " + call.getUnnormalizedTimex() + " : " + eE.getCause() );
+            } else {
+                // e.g. no parse, or an anchor the parse can't be resolved against, may succeed for another anchor
+                _cache.putAnchored( call.getTimex(), call.getDCT(), "" );
+                LOGGER.error( fileName + ": Timenorm failed to normalize timex " + call.getUnnormalizedTimex() );
+            }
+        } catch ( InterruptedException iE ) {
+            future.cancel( true );
+            Thread.currentThread().interrupt();
+        }
+        return "";
+    }
+
+    /**
+     * Timeouts and blow ups come from the size of the chart, which only depends on the text of the timex.
+     */
+    private void quarantine( final TimedCall call, final String reason ) {
+        _quarantine.quarantine( call.getTimex(), reason );
+        if ( _store != null ) {
+            _store.putFailure( NormalizationCache.storeKey( call.getTimex(), call.getDCT() ) );
+        }
+    }
+
+    /**
+     * Adds a worker to stand in for one stuck in the call's parse, if it is still running.
+     * The call is abandoned under the same lock as {@link #retireWorker()},
+     * so a parse that stops right away can't retire its stand-in before it was added.
+     */
+    synchronized private void abandon( final TimedCall call ) {
+        if ( call.abandon() ) {
+            _standIns++;
+            resizePool();
+        }
+    }
+
+    /**
+     * Called by an abandoned parse when it finally stops, the stand-in is no longer needed.
+     */
+    synchronized private void retireWorker() {
+        _standIns--;
+        resizePool();
+    }
+
+    /**
+     * Sizes the pool to the workers and their stand-ins, never letting the maximum drop below the core size.
+     */
+    private void resizePool() {
+        final int size = _workers + Math.max( 0, _standIns );
+        if ( size > _executor.getMaximumPoolSize() ) {
+            _executor.setMaximumPoolSize( size );
+            _executor.setCorePoolSize( size );
+        } else {
+            _executor.setCorePoolSize( size );
+            _executor.setMaximumPoolSize( size );
+        }
+    }
+
+    /**
+     * @param timex covered text of a time mention.
+     * @param DCT   document creation time, may be null.
+     * @return TimeML value from the cache, the {@link FastDateRecognizer} or the persistent store,
+     * an empty string if TimeNorm is known to fail on the timex, null if the timex needs TimeNorm.
+     */
+    private String getKnownTimeML( final String timex, final TimeSpan DCT ) {
+        final String cached = _cache.get( timex, DCT );
+        if ( cached != null ) {
+            return cached;
+        }
+        final String recognized = FastDateRecognizer.recognize( timex );
+        if ( recognized != null ) {
+            _fastPathHits.incrementAndGet();
+            _cache.putAbsolute( timex, recognized );
+            return recognized;
+        }
+        if ( _quarantine.isQuarantined( timex ) ) {
+            return "";
+        }
+        if ( _store == null ) {
+            return null;
+        }
+        final String key = NormalizationCache.storeKey( timex, DCT );
+        final String stored = _store.get( key );
+        if ( stored != null ) {
+            _cache.putAnchored( timex, DCT, stored );
+            return stored;
+        }
+        return _store.isKnownFailure( key ) ? "" : null;
+    }
+
+    /**
+     * A single TimeNorm call that remembers when a worker started on it.
+     */
+    static private final class TimedCall implements Callable<String> {
+        static private final int RUNNING = 0;
+        static private final int FINISHED = 1;
+        static private final int ABANDONED = 2;
+
+        private final TemporalExpressionParser _normalizer;
+        private final String _timex;
+        private final String _unnormalizedTimex;
+        private final TimeSpan _DCT;
+        private final Runnable _onAbandonedFinish;
+        private final AtomicInteger _state = new AtomicInteger( RUNNING );
+        private volatile long _started = 0;
+
+        private TimedCall( final TemporalExpressionParser normalizer, final String timex, final TimeSpan DCT,
+                           final Runnable onAbandonedFinish ) {
+            _normalizer = normalizer;
+            _timex = timex;
+            _unnormalizedTimex = String.join( " ", timex.split( "\\s" ) );
+            _DCT = DCT;
+            _onAbandonedFinish = onAbandonedFinish;
+        }
+
+        @Override
+        public String call() {
+            _started = System.nanoTime();
+            try {
+                final Temporal normalizedTimex = _normalizer.parse( _unnormalizedTimex, _DCT ).get();
+                return normalizedTimex.timeMLValue();
+            } finally {
+                if ( !_state.compareAndSet( RUNNING, FINISHED ) ) {
+                    _onAbandonedFinish.run();
+                }
+            }
+        }
+
+        /**
+         * @return true if the call was still running on a worker, which is now tied up until the parse stops.
+         */
+        private boolean abandon() {
+            return _started != 0 && _state.compareAndSet( RUNNING, ABANDONED );
+        }
+
+        private long getStarted() {
+            return _started;
+        }
+
+        private String getTimex() {
+            return _timex;
+        }
+
+        private TimeSpan getDCT() {
+            return _DCT;
+        }
+
+        private String getUnnormalizedTimex() {
+            return _unnormalizedTimex;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.apache.ctakes.temporal.norm;
+
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expressions that TimeNorm timed out on or blew up on during this run.
+ * Quarantined expressions are not handed to TimeNorm again, so a pathological expression
+ * costs at most one timeout per run instead of one per occurrence.
+ * Expressions are fingerprinted by their whitespace-normalized, lowercased text,
+ * which is all that the TimeNorm chart parse depends on.
+ * Failures that may depend on the anchor do not belong here.
+ *
+ * @author chip-nlp
+ */
+final public class TimexQuarantine {
+
+    static private final Logger LOGGER = Logger.getLogger( "TimexQuarantine" );
+
+    private final Map<String, Entry> _quarantined = new ConcurrentHashMap<>();
+
+    /**
+     * @param timex raw text of a time expression.
+     * @return true if the expression is quarantined.  Counts the short-circuited call.
+     */
+    public boolean isQuarantined( final String timex ) {
+        final Entry entry = _quarantined.get( fingerprint( timex ) );
+        if ( entry == null ) {
+            return false;
+        }
+        entry._shortCircuits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @param timex  raw text of a time expression.
+     * @param reason why TimeNorm should not see the expression again.
+     */
+    public void quarantine( final String timex, final String reason ) {
+        _quarantined.putIfAbsent( fingerprint( timex ), new Entry( reason ) );
+    }
+
+    /**
+     * @return number of quarantined expressions.
+     */
+    public int size() {
+        return _quarantined.size();
+    }
+
+    /**
+     * Logs every quarantined expression with the reason and the number of calls that were short-circuited.
+     */
+    public void log() {
+        LOGGER.info( "Quarantined " + _quarantined.size() + " expressions" );
+        for ( Map.Entry<String, Entry> quarantined : _quarantined.entrySet() ) {
+            LOGGER.info( "  \"" + quarantined.getKey() + "\" " + quarantined.getValue()._reason
+                         + " , short-circuited " + quarantined.getValue()._shortCircuits.get() + " times" );
+        }
+    }
+
+    static private String fingerprint( final String timex ) {
+        return NormalizationCache.normalizeWhitespace( timex ).toLowerCase();
+    }
+
+
+    static private final class Entry {
+        private final String _reason;
+        private final AtomicInteger _shortCircuits = new AtomicInteger();
+
+        private Entry( final String reason ) {
+            _reason = reason;
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.typesystem.type.syntax.BaseToken;
+import org.apache.ctakes.typesystem.type.syntax.PunctuationToken;
+import org.apache.ctakes.typesystem.type.syntax.WordToken;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.ctakes.typesystem.type.textsem.MedicationMention;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the single sweep of the {@link AnnotationConfidencer} with the original scoring,
+ * which took the covered tokens of each mention from {@link JCasUtil#indexCovered}, on random documents.
+ *
+ * @author chip-nlp
+ */
+public class AnnotationConfidencerTest {
+
+    static private final Collection<String> BAD_POS = new HashSet<>( Arrays.asList(
+            "CC", "DT", "EX", "IN", "MD", "PDT", "PP$", "PPZ", "PRP", "PRP$", "TO", "WDT", "WP", "WP$", "WRB"
+    ) );
+
+    static private final String[] PARTS_OF_SPEECH = { "CC", "NN", "DT", "VB", "PRP", null };
+
+    static private final int DOCUMENTS = 200;
+    static private final int LENGTH = 200;
+    static private final int MENTIONS = 40;
+
+    @Test
+    public void matchesTheIndexCoveredScoring() throws Exception {
+        final AnalysisEngine engine
+              = AnalysisEngineFactory.createEngine( AnalysisEngineFactory.createEngineDescription( AnnotationConfidencer.class ) );
+        final Random random = new Random( 5 );
+        final JCas jCas = JCasFactory.createJCas();
+        int compared = 0;
+        for ( int d = 0; d < DOCUMENTS; d++ ) {
+            jCas.reset();
+            final StringBuilder text = new StringBuilder();
+            for ( int i = 0; i < LENGTH; i++ ) {
+                text.append( (char)( 'a' + random.nextInt( 26 ) ) );
+            }
+            jCas.setDocumentText( text.toString() );
+            // tokens of 1 to 6 characters, sometimes adjacent
+            int begin = 0;
+            while ( begin < LENGTH - 5 ) {
+                final int end = begin + 1 + random.nextInt( 6 );
+                final BaseToken token = random.nextInt( 5 ) == 0
+                                        ? new PunctuationToken( jCas, begin, end )
+                                        : new WordToken( jCas, begin, end );
+                token.setPartOfSpeech( PARTS_OF_SPEECH[ random.nextInt( PARTS_OF_SPEECH.length ) ] );
+                token.addToIndexes();
+                begin = end + random.nextInt( 2 );
+            }
+            // overlapping mentions, some inside a single token and some of no length
+            for ( int i = 0; i < MENTIONS; i++ ) {
+                final int mentionBegin = random.nextInt( LENGTH );
+                final int mentionEnd = Math.min( LENGTH, mentionBegin + random.nextInt( 15 ) );
+                final EventMention mention = random.nextBoolean()
+                                             ? new EventMention( jCas, mentionBegin, mentionEnd )
+                                             : new MedicationMention( jCas, mentionBegin, mentionEnd );
+                mention.addToIndexes();
+            }
+            final Map<EventMention, List<BaseToken>> covered
+                  = JCasUtil.indexCovered( jCas, EventMention.class, BaseToken.class );
+            engine.process( jCas );
+            for ( EventMention mention : JCasUtil.select( jCas, EventMention.class ) ) {
+                final List<BaseToken> tokens = covered.get( mention );
+                final String span = "document " + d + " mention " + mention.getBegin() + "," + mention.getEnd();
+                if ( tokens == null || tokens.isEmpty() ) {
+                    // left alone
+                    assertEquals( span, 0f, mention.getConfidence(), 0f );
+                } else {
+                    assertEquals( span, getConfidence( tokens ), mention.getConfidence(), 0f );
+                    compared++;
+                }
+            }
+        }
+        assertTrue( compared > DOCUMENTS * MENTIONS / 2 );
+    }
+
+    /**
+     * The original scoring.
+     */
+    static private float getConfidence( final Collection<BaseToken> tokens ) {
+        final long posDeficit = tokens.size() > 1
+                                ? 0
+                                : tokens.stream().map( BaseToken::getPartOfSpeech ).anyMatch( BAD_POS::contains ) ? 20 : 0;
+        long lengthDeficit = 0;
+        if ( tokens.size() < 3 ) {
+            final IntSummaryStatistics stats = tokens.stream()
+                                                     .map( BaseToken::getCoveredText )
+                                                     .mapToInt( String::length )
+                                                     .summaryStatistics();
+            final long termLengthDeficit = Math.max( 0, 5 * ( 7 - stats.getSum() ) );
+            final long tokenLengthDeficit = Math.max( 0, 5 * ( 5 - stats.getMax() ) );
+            final long tokenCountDeficit = Math.max( 0, 3 - tokens.size() );
+            lengthDeficit = ( termLengthDeficit + tokenLengthDeficit ) * tokenCountDeficit;
+        }
+        return Math.max( 1, 100 - posDeficit - lengthDeficit ) / 100f;
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.apache.ctakes.temporal.ae;
+
+import org.apache.ctakes.typesystem.type.refsem.Time;
+import org.apache.ctakes.typesystem.type.syntax.BaseToken;
+import org.apache.ctakes.typesystem.type.syntax.NewlineToken;
+import org.apache.ctakes.typesystem.type.syntax.NumToken;
+import org.apache.ctakes.typesystem.type.syntax.WordToken;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.ctakes.typesystem.type.textsem.TimeMention;
+import org.apache.ctakes.typesystem.type.util.Pair;
+import org.apache.ctakes.typesystem.type.util.Pairs;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.pipeline.SimplePipeline;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares the instances of the {@link TimelinesInstanceAnnotator} with those the Python TimelineDelegator builds
+ * for the same note with get_dtr_instance and get_tlink_instance, kept in timeline_delegator_instances.tsv.
+ * The note begins with an event, so the DTR windows start at negative slice indices,
+ * and two of its tokens share a begin with a shorter token.
+ *
+ * @author chip-nlp
+ */
+public class TimelinesInstanceAnnotatorTest {
+
+    // tokens are separated by spaces, every newline is a token
+    static private final String TEXT = "FOLFOX started 03/04/2020 .\n"
+                                       + "Plan : cisplatin 5-FU on 2020-04-01 , then chemo weekly for 3 months .\n"
+                                       + "\n"
+                                       + "Follow up in 2 weeks after chemo";
+
+    // shorter tokens sharing the begin of a longer one, as a number inside a word
+    static private final String[] INNER_NUMBERS = { "5-FU", "2020-04-01" };
+
+    static private final String[] EVENTS = { "FOLFOX", "cisplatin", "5-FU", "chemo" };
+
+    // timex, normalized
+    static private final Object[][] TIMEXES = {
+            { "03/04/2020", true },
+            { "2020-04-01", true },
+            { "weekly", false },
+            { "3 months", true },
+            { "2 weeks", true },
+    };
+
+    static private final String PYTHON_INSTANCES = "timeline_delegator_instances.tsv";
+
+    @Test
+    public void buildsThePythonInstances() throws Exception {
+        final JCas jCas = JCasFactory.createJCas();
+        jCas.setDocumentText( TEXT );
+        addTokens( jCas );
+        for ( String event : EVENTS ) {
+            for ( int begin = TEXT.indexOf( event ); begin >= 0; begin = TEXT.indexOf( event, begin + 1 ) ) {
+                new EventMention( jCas, begin, begin + event.length() ).addToIndexes();
+            }
+        }
+        for ( Object[] timex : TIMEXES ) {
+            final int begin = TEXT.indexOf( (String)timex[ 0 ] );
+            final TimeMention timeMention = new TimeMention( jCas, begin, begin + ( (String)timex[ 0 ] ).length() );
+            if ( (Boolean)timex[ 1 ] ) {
+                final Time time = new Time( jCas );
+                time.setNormalizedForm( "N" );
+                timeMention.setTime( time );
+            }
+            timeMention.addToIndexes();
+        }
+        SimplePipeline.runPipeline( jCas, AnalysisEngineFactory.createEngineDescription(
+              TimelinesInstanceAnnotator.class,
+              TimelinesInstanceAnnotator.PARAM_TUIS, "" ) );
+
+        final Pairs pairs = JCasUtil.selectSingle( jCas, Pairs.class );
+        assertEquals( TimelinesInstanceAnnotator.MARKER, pairs.getPairs( 0 ).getAttribute() );
+        final Map<String, String> java = new LinkedHashMap<>();
+        for ( int i = 1; i < pairs.getPairs().size(); i++ ) {
+            final Pair pair = pairs.getPairs( i );
+            java.put( pair.getAttribute(), pair.getValue() );
+        }
+        assertEquals( readPythonInstances(), java );
+    }
+
+    static private void addTokens( final JCas jCas ) {
+        int begin = 0;
+        while ( begin < TEXT.length() ) {
+            if ( TEXT.charAt( begin ) == ' ' ) {
+                begin++;
+                continue;
+            }
+            if ( TEXT.charAt( begin ) == '\n' ) {
+                new NewlineToken( jCas, begin, begin + 1 ).addToIndexes();
+                begin++;
+                continue;
+            }
+            int end = begin;
+            while ( end < TEXT.length() && TEXT.charAt( end ) != ' ' && TEXT.charAt( end ) != '\n' ) {
+                end++;
+            }
+            new WordToken( jCas, begin, end ).addToIndexes();
+            begin = end;
+        }
+        for ( String word : INNER_NUMBERS ) {
+            final int wordBegin = TEXT.indexOf( word );
+            int end = wordBegin;
+            while ( Character.isDigit( TEXT.charAt( end ) ) ) {
+                end++;
+            }
+            final BaseToken number = new NumToken( jCas, wordBegin, end );
+            number.addToIndexes();
+        }
+    }
+
+    /**
+     * @return instances by attribute, the attributes as the TimelinesInstanceAnnotator writes them.
+     */
+    static private Map<String, String> readPythonInstances() throws IOException {
+        final Map<String, String> instances = new LinkedHashMap<>();
+        try ( InputStream stream = TimelinesInstanceAnnotatorTest.class.getResourceAsStream( PYTHON_INSTANCES ) ) {
+            assertNotNull( PYTHON_INSTANCES, stream );
+            final BufferedReader reader = new BufferedReader( new InputStreamReader( stream, StandardCharsets.UTF_8 ) );
+            String line = reader.readLine();
+            while ( line != null ) {
+                if ( !line.isEmpty() && !line.startsWith( "#" ) ) {
+                    final String[] columns = line.split( "\t" );
+                    instances.put( columns[ 0 ], columns[ 1 ] );
+                }
+                line = reader.readLine();
+            }
+        }
+        return instances;
+    }
+
+}
@@ -0,0 +1,170 @@
+package org.apache.ctakes.temporal.cc;
+
+import org.apache.ctakes.core.config.ConfigParameterConstants;
+import org.apache.ctakes.temporal.ae.DCTAnnotator;
+import org.apache.ctakes.temporal.ae.TimeMentionNormalizer;
+import org.apache.ctakes.typesystem.type.structured.DocumentID;
+import org.apache.ctakes.typesystem.type.structured.DocumentPath;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.ctakes.typesystem.type.textsem.TimeMention;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.fit.factory.AggregateBuilder;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the DCTAnnotator, TimeMentionNormalizer and NormalizedEventTimeAnaforaWriter as concurrent replicas,
+ * each over its own copy of the same notes in a different order,
+ * and checks every replica writes the same bytes as a single replica run alone.
+ * Only the save time of the anafora files may differ.
+ *
+ * @author chip-nlp
+ */
+public class ConcurrentReplicasTest {
+
+   static private final int REPLICAS = 8;
+   static private final int ROUNDS = 3;
+
+   static private final String EXTENSION = ".NormalizedTimexes.ctakes.completed.xml";
+
+   // file name, text.  The DCT comes from a spec file name or a UPMC header.
+   static private final String[][] NOTES = {
+         { "pt1_note_03-14-2024", "Started FOLFOX on 3/4/21 and gave chemo Tuesday.\nNext chemo in two weeks." },
+         { "pt1_note_06-01-2023", "Cisplatin since March 5, 2019, held yesterday.\nResume chemo the end of May." },
+         { "pt2_upmc", "Principal Date: 2022-11-30\nCarboplatin weekly for 3 months, last chemo June 2nd." },
+         { "pt2_note_01-02-2020", "Chemo last Tuesday, again next month and in the first quarter." },
+         { "pt3_upmc", "Principal Date: 2019-07-04\nDocetaxel 3 days ago, chemo again on 2019-07-18 or 7/25/2019." },
+         { "pt3_note_12-31-2021", "Chemo tomorrow, then monthly chemo until 2022." },
+   };
+
+   static private final String[] EVENTS = { "FOLFOX", "chemo", "Chemo", "Cisplatin", "Carboplatin", "Docetaxel" };
+
+   static private final String[] TIMEXES = {
+         "3/4/21", "Tuesday", "two weeks", "March 5, 2019", "yesterday", "the end of May", "weekly", "3 months",
+         "June 2nd", "last Tuesday", "next month", "the first quarter", "3 days ago", "2019-07-18", "7/25/2019",
+         "tomorrow", "monthly", "2022"
+   };
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   @Test
+   public void replicasWriteWhatASingleReplicaWrites() throws Exception {
+      final File single = folder.newFolder( "single" );
+      run( single, 0, 1 );
+
+      final ExecutorService executor = Executors.newFixedThreadPool( REPLICAS );
+      final CyclicBarrier start = new CyclicBarrier( REPLICAS );
+      final List<Future<File>> replicas = new ArrayList<>();
+      try {
+         for ( int r = 0; r < REPLICAS; r++ ) {
+            final int replica = r;
+            final File output = folder.newFolder( "replica" + replica );
+            replicas.add( executor.submit( (Callable<File>)() -> {
+               start.await();
+               // each replica starts at another note
+               run( output, replica, ROUNDS );
+               return output;
+            } ) );
+         }
+         final List<File> outputs = new ArrayList<>();
+         for ( Future<File> replica : replicas ) {
+            outputs.add( replica.get() );
+         }
+         final List<String> fileNames = list( single );
+         assertEquals( fileNames.toString(), NOTES.length, fileNames.size() );
+         for ( File output : outputs ) {
+            assertEquals( output.getName(), fileNames, list( output ) );
+            for ( String fileName : fileNames ) {
+               assertEquals( output.getName() + " " + fileName,
+                             read( new File( single, fileName ) ), read( new File( output, fileName ) ) );
+            }
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   static private void run( final File output, final int firstNote, final int rounds ) throws Exception {
+      final AnalysisEngine engine = AnalysisEngineFactory.createEngine( createDescription( output ) );
+      final JCas jCas = JCasFactory.createJCas();
+      for ( int round = 0; round < rounds; round++ ) {
+         for ( int n = 0; n < NOTES.length; n++ ) {
+            final String[] note = NOTES[ ( firstNote + n ) % NOTES.length ];
+            jCas.reset();
+            fill( jCas, note[ 0 ], note[ 1 ] );
+            engine.process( jCas );
+         }
+      }
+      engine.collectionProcessComplete();
+      engine.destroy();
+   }
+
+   static private AnalysisEngineDescription createDescription( final File output ) throws Exception {
+      final AggregateBuilder builder = new AggregateBuilder();
+      builder.add( AnalysisEngineFactory.createEngineDescription( DCTAnnotator.class ) );
+      builder.add( AnalysisEngineFactory.createEngineDescription( TimeMentionNormalizer.class,
+            TimeMentionNormalizer.PARAM_TUIS, "" ) );
+      builder.add( AnalysisEngineFactory.createEngineDescription( NormalizedEventTimeAnaforaWriter.class,
+            ConfigParameterConstants.PARAM_OUTPUTDIR, output.getPath() ) );
+      return builder.createAggregateDescription();
+   }
+
+   static private void fill( final JCas jCas, final String fileName, final String text ) {
+      jCas.setDocumentText( text );
+      final DocumentID documentId = new DocumentID( jCas );
+      documentId.setDocumentID( fileName );
+      documentId.addToIndexes();
+      final DocumentPath documentPath = new DocumentPath( jCas );
+      documentPath.setDocumentPath( "/notes/" + fileName + ".txt" );
+      documentPath.addToIndexes();
+      for ( String event : EVENTS ) {
+         for ( int begin = text.indexOf( event ); begin >= 0; begin = text.indexOf( event, begin + 1 ) ) {
+            new EventMention( jCas, begin, begin + event.length() ).addToIndexes();
+         }
+      }
+      for ( String timex : TIMEXES ) {
+         final int begin = text.indexOf( timex );
+         if ( begin >= 0 ) {
+            new TimeMention( jCas, begin, begin + timex.length() ).addToIndexes();
+         }
+      }
+   }
+
+   static private List<String> list( final File directory ) {
+      final List<String> fileNames = new ArrayList<>();
+      final File[] files = directory.listFiles( ( dir, name ) -> name.endsWith( EXTENSION ) );
+      if ( files != null ) {
+         for ( File file : files ) {
+            fileNames.add( file.getName() );
+         }
+      }
+      Collections.sort( fileNames );
+      return fileNames;
+   }
+
+   static private String read( final File file ) throws Exception {
+      final String xml = new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 );
+      return xml.replaceFirst( "<savetime>[^<]*</savetime>", "<savetime/>" );
+   }
+
+}
@@ -0,0 +1,159 @@
+package org.apache.ctakes.temporal.cc;
+
+import org.apache.ctakes.core.util.doc.SourceMetadataUtil;
+import org.apache.ctakes.typesystem.type.refsem.Time;
+import org.apache.ctakes.typesystem.type.structured.DocumentID;
+import org.apache.ctakes.typesystem.type.textsem.EventMention;
+import org.apache.ctakes.typesystem.type.textsem.TimeMention;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Writes notes with the {@link TemporalRowWriter}, one batch per note, and reads them back with the {@link TemporalRowReader},
+ * whole and with the last batch cut short.  Document creation times that are missing or malformed only lose the DOCTIME row.
+ *
+ * @author chip-nlp
+ */
+public class TemporalRowWriterTest {
+
+   static private final String TEXT = "Started FOLFOX on 3/4/2020, stopped it 2 weeks later.";
+
+   // note, document creation time, DOCTIME value or null if there is none
+   static private final String[][] NOTES = {
+         { "note_a", "2020-03-01", "2020-03-01" },
+         { "note_b", "20200302_1030", "2020-03-02" },
+         { "note_c", "", null },
+         { "note_d", "2020-13-45", null },
+         { "note_e", "2020", null },
+         { "note_f", "March 2020", null },
+         { "note_g", "2020-02-29", "2020-02-29" },
+   };
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   @Test
+   public void readsBackWhatWasWritten() throws Exception {
+      final File file = write();
+      assertEquals( getExpectedRows( NOTES.length ), read( file ) );
+   }
+
+   @Test
+   public void stopsAtABatchCutShort() throws Exception {
+      final File file = write();
+      final List<Long> batchStarts = getBatchStarts( file );
+      assertEquals( NOTES.length, batchStarts.size() );
+      final long lastBatch = batchStarts.get( batchStarts.size() - 1 );
+      final byte[] bytes = Files.readAllBytes( file.toPath() );
+      // in the middle of the batch length, and in the middle of the compressed rows
+      for ( long cut : new long[] { lastBatch + 2, lastBatch + 4 + ( bytes.length - lastBatch - 4 ) / 2 } ) {
+         final File truncated = folder.newFile();
+         Files.write( truncated.toPath(), bytes );
+         try ( RandomAccessFile output = new RandomAccessFile( truncated, "rw" ) ) {
+            output.setLength( cut );
+         }
+         assertEquals( "cut at " + cut, getExpectedRows( NOTES.length - 1 ), read( truncated ) );
+      }
+   }
+
+   private File write() throws Exception {
+      final File file = new File( folder.getRoot(), "rows.bin" );
+      final AnalysisEngine writer = AnalysisEngineFactory.createEngine( AnalysisEngineFactory.createEngineDescription(
+           TemporalRowWriter.class,
+           TemporalRowWriter.PARAM_OUTPUT_FILE, file.getPath(),
+           TemporalRowWriter.PARAM_BATCH_SIZE, 3 ) );
+      final JCas jCas = JCasFactory.createJCas();
+      for ( String[] note : NOTES ) {
+         jCas.reset();
+         jCas.setDocumentText( TEXT );
+         final DocumentID documentId = new DocumentID( jCas );
+         documentId.setDocumentID( note[ 0 ] );
+         documentId.addToIndexes();
+         SourceMetadataUtil.setPatientIdentifier( jCas, "patient" );
+         SourceMetadataUtil.getOrCreateSourceData( jCas ).setSourceOriginalDate( note[ 1 ] );
+         new EventMention( jCas, 8, 14 ).addToIndexes();
+         new EventMention( jCas, 28, 35 ).addToIndexes();
+         final TimeMention date = new TimeMention( jCas, 18, 26 );
+         final Time time = new Time( jCas );
+         time.setNormalizedForm( "2020-03-04" );
+         date.setTime( time );
+         date.addToIndexes();
+         new TimeMention( jCas, 39, 52 ).addToIndexes();
+         writer.process( jCas );
+      }
+      writer.collectionProcessComplete();
+      writer.destroy();
+      return file;
+   }
+
+   static private List<String> getExpectedRows( final int noteCount ) {
+      final List<String> rows = new ArrayList<>();
+      for ( int n = 0; n < noteCount; n++ ) {
+         final String note = NOTES[ n ][ 0 ];
+         rows.add( new TemporalRow( note, "patient", "1@e@" + note + "@system", 8, 14, "EVENT",
+                                    "Overlap", "POS", "UNDETERMINED", "", null ).toTsv() );
+         rows.add( new TemporalRow( note, "patient", "2@e@" + note + "@system", 28, 35, "EVENT",
+                                    "Overlap", "POS", "UNDETERMINED", "", null ).toTsv() );
+         // the anafora writer's gap after the events
+         int id = 4;
+         if ( NOTES[ n ][ 2 ] != null ) {
+            rows.add( new TemporalRow( note, "patient", id + "@e@" + note + "@system", -1, -1, "DOCTIME",
+                                       null, null, null, null, NOTES[ n ][ 2 ] ).toTsv() );
+            id++;
+         }
+         rows.add( new TemporalRow( note, "patient", id + "@e@" + note + "@system", 18, 26, "TIMEX3",
+                                    null, null, null, null, "2020-03-04" ).toTsv() );
+         id++;
+         rows.add( new TemporalRow( note, "patient", id + "@e@" + note + "@system", 39, 52, "TIMEX3",
+                                    null, null, null, null, null ).toTsv() );
+      }
+      return rows;
+   }
+
+   static private List<String> read( final File file ) throws IOException {
+      final List<String> rows = new ArrayList<>();
+      try ( TemporalRowReader reader = new TemporalRowReader( file.getPath() ) ) {
+         TemporalRow row = reader.next();
+         while ( row != null ) {
+            rows.add( row.toTsv() );
+            row = reader.next();
+         }
+      }
+      return rows;
+   }
+
+   /**
+    * @return file offsets of the batch lengths.
+    */
+   static private List<Long> getBatchStarts( final File file ) throws IOException {
+      final List<Long> starts = new ArrayList<>();
+      try ( DataInputStream input = new DataInputStream( new FileInputStream( file ) ) ) {
+         long offset = 8;
+         input.skipBytes( 8 );
+         while ( offset < file.length() ) {
+            starts.add( offset );
+            final int length = input.readInt();
+            input.skipBytes( length );
+            offset += 4 + length;
+         }
+      }
+      return starts;
+   }
+
+}
@@ -0,0 +1,102 @@
+package org.apache.ctakes.temporal.norm;
+
+import org.clulab.timenorm.scfg.TemporalExpressionParser;
+import org.clulab.timenorm.scfg.TimeSpan;
+import org.junit.Test;
+
+import scala.util.Try;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the formats of the {@link FastDateRecognizer} javadoc, the inputs it must leave for TimeNorm,
+ * and that every recognized value is the value TimeNorm gives the same text.
+ *
+ * @author chip-nlp
+ */
+public class FastDateRecognizerTest {
+
+    // far enough from every date below that the TimeNorm heuristics can't prefer another reading
+    static private final TimeSpan DCT = TimeSpan.of( 2020, 6, 15 );
+
+    // text, value
+    static private final String[][] RECOGNIZED = {
+            { "2019-03-05", "2019-03-05" },
+            { "2019-3-5", "2019-03-05" },
+            { "3/5/19", "2019-03-05" },
+            { "03/05/2019", "2019-03-05" },
+            { "3-5-19", "2019-03-05" },
+            { "3 /5/19", "2019-03-05" },
+            { "03-05-2019", "2019-03-05" },
+            { "2/29/2020", "2020-02-29" },
+            { "March 5, 2019", "2019-03-05" },
+            { "march 5 2019", "2019-03-05" },
+            { "Mar 5 2019", "2019-03-05" },
+            { "Mar. 5th 2019", "2019-03-05" },
+            { "Sept 5, 2019", "2019-09-05" },
+            { "September 21st, 2019", "2019-09-21" },
+            { "2019", "2019" },
+            { "1900", "1900" },
+            { "2100", "2100" },
+            { "March 2019", "2019-03" },
+            { "Mar, 2019", "2019-03" },
+            { "Mar. 2019", "2019-03" },
+    };
+
+    // formats TimeNorm has no rule for, text, value
+    static private final String[][] RECOGNIZED_BEYOND_TIMENORM = {
+            { "5 Mar 2019", "2019-03-05" },
+            { "5-Mar-2019", "2019-03-05" },
+            { "5 March, 2019", "2019-03-05" },
+            { "03/2019", "2019-03" },
+            { "2019-03", "2019-03" },
+    };
+
+    static private final String[] REJECTED = {
+            // dates that do not exist
+            "2/30/2019", "2/29/2019", "13/5/2019", "2019-13-01", "4/31/2019",
+            // a month with no day or year
+            "Mar.", "Mar", "Mar. 5th", "March 5",
+            // trailing punctuation
+            "3/5/19.", "March 5, 2019,", "2019-03-05.", "2019-", "March 2019.",
+            // mixed separators, missing parts and other near misses
+            "3/5-19", "3/5", "5th Mar 2019", "Marc 2019", "03/05/019", "1899", "2101", "19",
+            "12345", "today", "", " ",
+    };
+
+    @Test
+    public void recognizesTheDocumentedFormats() {
+        for ( String[] row : RECOGNIZED ) {
+            assertEquals( row[ 0 ], row[ 1 ], FastDateRecognizer.recognize( row[ 0 ] ) );
+        }
+        for ( String[] row : RECOGNIZED_BEYOND_TIMENORM ) {
+            assertEquals( row[ 0 ], row[ 1 ], FastDateRecognizer.recognize( row[ 0 ] ) );
+        }
+    }
+
+    @Test
+    public void rejectsEverythingElse() {
+        for ( String text : REJECTED ) {
+            assertNull( "\"" + text + "\"", FastDateRecognizer.recognize( text ) );
+        }
+    }
+
+    @Test
+    public void agreesWithTimeNorm() {
+        final TemporalExpressionParser parser = TemporalExpressionParser.shared( "en" );
+        for ( String[] row : RECOGNIZED ) {
+            final String recognized = FastDateRecognizer.recognize( row[ 0 ] );
+            assertNotNull( row[ 0 ], recognized );
+            assertEquals( row[ 0 ], parser.parse( row[ 0 ], DCT ).get().timeMLValue(), recognized );
+        }
+        // if TimeNorm ever learns these formats it has to agree too
+        for ( String[] row : RECOGNIZED_BEYOND_TIMENORM ) {
+            final Try<?> parsed = parser.parse( row[ 0 ], DCT );
+            assertTrue( row[ 0 ] + " now parses, move it to RECOGNIZED", parsed.isFailure() );
+        }
+    }
+
+}
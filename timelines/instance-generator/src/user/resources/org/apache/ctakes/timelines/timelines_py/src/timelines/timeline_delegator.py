@@ -25,6 +25,14 @@ MAX_TLINK_DISTANCE = 60
 TLINK_PAD_LENGTH = 2
 MODEL_MAX_LEN = 512
 CHEMO_TUI = "T061"
+# written by the Java RelevanceGate
+RELEVANT_EVENTS_CATEGORY = "TxTimelinesRelevantEvents"
+COLLECTION_TEXT_RELATION = (
+    "org.apache.ctakes.typesystem.type.relation.CollectionTextRelation"
+)
+# written by the Java TimelinesInstanceAnnotator
+INSTANCES_MARKER = "TxTimelinesInstances"
+PAIRS = "org.apache.ctakes.typesystem.type.util.Pairs"
 DTR_OUTPUT_COLUMNS = [
     "DCT",
     "patient_id",
@@ -71,6 +79,10 @@ DTR_HF_HUB = "HealthNLP/pubmedbert_dtr"
 
 CONMOD_HF_HUB = "HealthNLP/pubmedbert_conmod"
 
+# instances per forward pass, and notes whose instances are classified together
+DEFAULT_BATCH_SIZE = 32
+DEFAULT_BATCH_NOTES = 1
+
 
 def normalize_mention(mention: Union[FeatureStructure, None]) -> str:
     if mention is None:
@@ -307,6 +319,61 @@ def get_tuis(event: FeatureStructure) -> Set[str]:
     return {tui for tui in map(get_tui, elements) if tui is not None}
 
 
+def fs_list_elements(
+    fs_list: Optional[FeatureStructure],
+) -> Generator[FeatureStructure, None, None]:
+    # an empty list has no head
+    while fs_list is not None and hasattr(fs_list, "head"):
+        yield fs_list.head
+        fs_list = fs_list.tail
+
+
+def get_gated_mentions(cas: Cas) -> Optional[List[FeatureStructure]]:
+    # None if the note did not go through the RelevanceGate
+    if not cas.typesystem.contains_type(COLLECTION_TEXT_RELATION):
+        return None
+    for relation in cas.select(COLLECTION_TEXT_RELATION):
+        if relation.category == RELEVANT_EVENTS_CATEGORY:
+            return [
+                argument.argument for argument in fs_list_elements(relation.members)
+            ]
+    return None
+
+
+def get_precomputed_instances(
+    cas: Cas,
+) -> Optional[
+    Tuple[
+        Dict[Tuple[int, int], str],
+        Dict[Tuple[int, int], Dict[Tuple[int, int], str]],
+    ]
+]:
+    # None if the note did not go through the TimelinesInstanceAnnotator,
+    # otherwise the DTR instance of each event span
+    # and the TLINK instance of each timex span in each event's window
+    if not cas.typesystem.contains_type(PAIRS):
+        return None
+    for pairs in cas.select(PAIRS):
+        elements = getattr(pairs.pairs, "elements", [])
+        if len(elements) == 0 or elements[0].attribute != INSTANCES_MARKER:
+            continue
+        dtr_instances: Dict[Tuple[int, int], str] = {}
+        tlink_instances: Dict[
+            Tuple[int, int], Dict[Tuple[int, int], str]
+        ] = defaultdict(dict)
+        for pair in elements[1:]:
+            kind, *offsets = pair.attribute.split(" ")
+            offsets = [int(offset) for offset in offsets]
+            if kind == "dtr":
+                dtr_instances[(offsets[0], offsets[1])] = pair.value
+            elif kind == "tlink":
+                tlink_instances[(offsets[0], offsets[1])][
+                    (offsets[2], offsets[3])
+                ] = pair.value
+        return dtr_instances, tlink_instances
+    return None
+
+
 def get_pipeline(path, device):
     return pipeline(
         model=path,
@@ -322,15 +389,24 @@ class TimelineDelegator(cas_annotator.CasAnnotator):
         self.use_dtr = False
         self.use_conmod = False
         self.output_dir = "."
-        self.dtr_classifier = lambda _: []
-        self.tlink_classifier = lambda _: []
-        self.conmod_classifier = lambda _: []
+        self.batch_size = DEFAULT_BATCH_SIZE
+        self.batch_notes = DEFAULT_BATCH_NOTES
+        self.dtr_classifier = lambda *_, **__: []
+        self.tlink_classifier = lambda *_, **__: []
+        self.conmod_classifier = lambda *_, **__: []
         self.raw_events = []
+        # rows waiting on their labels, with the instances they are waiting on
+        self.buffered_rows = []
+        self.buffered_dtr_instances = []
+        self.buffered_tlink_instances = []
+        self.buffered_notes = 0
 
     def init_params(self, arg_parser):
         self.use_dtr = arg_parser.use_dtr
         self.use_conmod = arg_parser.use_conmod
         self.output_dir = arg_parser.output_dir
+        self.batch_size = max(1, arg_parser.batch_size)
+        self.batch_notes = max(1, arg_parser.batch_notes)
 
     def initialize(self):
         if torch.cuda.is_available():
@@ -365,14 +441,21 @@ class TimelineDelegator(cas_annotator.CasAnnotator):
     def declare_params(self, arg_parser):
         arg_parser.add_arg("--use_dtr", action="store_true")
         arg_parser.add_arg("--use_conmod", action="store_true")
+        arg_parser.add_arg("--batch_size", type=int, default=DEFAULT_BATCH_SIZE)
+        arg_parser.add_arg("--batch_notes", type=int, default=DEFAULT_BATCH_NOTES)
 
     def process(self, cas: Cas):
-        proc_mentions = [
-            event
-            for event in cas.select(cas.typesystem.get_type(ctakes_types.EventMention))
-            if CHEMO_TUI
-            in get_tuis(event)  # as of 1/10/24, using T061 which is ProcedureMention
-        ]
+        # the gate on the Java side has already found them
+        proc_mentions = get_gated_mentions(cas)
+        if proc_mentions is None:
+            proc_mentions = [
+                event
+                for event in cas.select(
+                    cas.typesystem.get_type(ctakes_types.EventMention)
+                )
+                if CHEMO_TUI
+                in get_tuis(event)  # as of 1/10/24, using T061 which is ProcedureMention
+            ]
 
         if len(proc_mentions) > 0:
             self._write_raw_timelines(cas, proc_mentions)
@@ -383,6 +466,7 @@ class TimelineDelegator(cas_annotator.CasAnnotator):
             )
 
     def collection_process_complete(self):
+        self._classify_buffered()
         output_columns = DTR_OUTPUT_COLUMNS if self.use_dtr else NO_DTR_OUTPUT_COLUMNS
         # don't write empty instances that were used to populate the dictionary
         # in case no concrete chemo mentions were found
@@ -410,7 +494,10 @@ class TimelineDelegator(cas_annotator.CasAnnotator):
 
         conmod_classifications = (
             result["label"]
-            for result in filter(None, self.conmod_classifier(conmod_instances))
+            for result in filter(
+                None,
+                self.conmod_classifier(conmod_instances, batch_size=self.batch_size),
+            )
         )
         actual_proc_mentions = [
             chemo
@@ -437,29 +524,47 @@ class TimelineDelegator(cas_annotator.CasAnnotator):
         document_creation_time = cas_source_data.sourceOriginalDate
         relevant_timexes = timexes_with_normalization(cas.select(timex_type))
 
-        base_tokens, token_map = tokens_and_map(cas, mode="dtr")
-        begin2token, end2token = invert_map(token_map)
-
-        def dtr_result(chemo):
-            inst = get_dtr_instance(chemo, base_tokens, begin2token, end2token)
-            result = list(self.dtr_classifier(inst))[0]
-            label = result["label"]
-            return label, inst
-
-        def tlink_result(chemo, timex):
-            inst = get_tlink_instance(chemo, timex, base_tokens, begin2token, end2token)
-            result = list(self.tlink_classifier(inst))[0]
-            label = result["label"]
-            if timex.begin < chemo.begin:
-                label = LABEL_TO_INVERTED_LABEL[label]
-            return label, inst
-
-        def tlink_result_dict(chemo):
+        # instances built on the Java side, None for notes that skipped it
+        precomputed = get_precomputed_instances(cas)
+        timexes_by_span = defaultdict(list)
+        for timex in relevant_timexes:
+            timexes_by_span[(timex.begin, timex.end)].append(timex)
+        token_maps = []
+
+        def get_token_maps():
+            # only built for the instances the Java side did not build
+            if len(token_maps) == 0:
+                base_tokens, token_map = tokens_and_map(cas, mode="dtr")
+                begin2token, end2token = invert_map(token_map)
+                token_maps.extend((base_tokens, token_map, begin2token, end2token))
+            return token_maps
+
+        def is_precomputed(chemo):
+            return precomputed is not None and (chemo.begin, chemo.end) in precomputed[0]
+
+        def dtr_instance(chemo):
+            if is_precomputed(chemo):
+                return precomputed[0][(chemo.begin, chemo.end)]
+            base_tokens, _, begin2token, end2token = get_token_maps()
+            return get_dtr_instance(chemo, base_tokens, begin2token, end2token)
+
+        def tlink_instance_dict(chemo):
+            if is_precomputed(chemo):
+                # already in timex order
+                chemo_instances = precomputed[1].get((chemo.begin, chemo.end), {})
+                return {
+                    timex: inst
+                    for span, inst in chemo_instances.items()
+                    for timex in timexes_by_span[span]
+                }
+            base_tokens, token_map, begin2token, end2token = get_token_maps()
             window_mentions = get_tlink_window_mentions(
                 chemo, relevant_timexes, begin2token, end2token, token_map
             )
             return {
-                window_mention: tlink_result(chemo, window_mention)
+                window_mention: get_tlink_instance(
+                    chemo, window_mention, base_tokens, begin2token, end2token
+                )
                 for window_mention in window_mentions
             }
 
@@ -480,23 +585,28 @@ class TimelineDelegator(cas_annotator.CasAnnotator):
                 f"WARNING: No normalized timexes discovered in {patient_id} file {note_name}"
             )
         for chemo in positive_chemo_mentions:
+            tlink_dict = tlink_instance_dict(chemo)
+            if len(tlink_dict) == 0:
+                continue
+            dtr_index = None
             if self.use_dtr:
-                chemo_dtr, dtr_inst = dtr_result(chemo)
-            tlink_dict = tlink_result_dict(chemo)
-            for timex, tlink_inst_pair in tlink_dict.items():
-                tlink, tlink_inst = tlink_inst_pair
-                chemo_text = normalize_mention(chemo)
+                dtr_inst = dtr_instance(chemo)
+                dtr_index = len(self.buffered_dtr_instances)
+                self.buffered_dtr_instances.append(dtr_inst)
+            chemo_text = normalize_mention(chemo)
+            for timex, tlink_inst in tlink_dict.items():
                 timex_text = timex.time.normalizedForm
+                # labels are filled in by _classify_buffered
                 if self.use_dtr:
                     instance = [
                         document_creation_time,
                         patient_id,
                         chemo_text,
                         annotation_ids[chemo],
-                        chemo_dtr,
+                        None,
                         timex_text,
                         annotation_ids[timex],
-                        tlink,
+                        None,
                         note_name,
                         dtr_inst,
                         tlink_inst,
@@ -509,8 +619,51 @@ class TimelineDelegator(cas_annotator.CasAnnotator):
                         annotation_ids[chemo],
                         timex_text,
                         annotation_ids[timex],
-                        tlink,
+                        None,
                         note_name,
                         tlink_inst,
                     ]
+                tlink_index = len(self.buffered_tlink_instances)
+                self.buffered_tlink_instances.append(tlink_inst)
+                self.buffered_rows.append(
+                    (instance, dtr_index, tlink_index, timex.begin < chemo.begin)
+                )
+        self.buffered_notes += 1
+        if self.buffered_notes >= self.batch_notes:
+            self._classify_buffered()
+
+    def _classify_buffered(self):
+        # one pipeline call per classifier for every buffered note,
+        # the pipelines split the instances into batches of batch_size
+        if len(self.buffered_rows) > 0:
+            tlink_labels = self._classify(
+                self.tlink_classifier, self.buffered_tlink_instances
+            )
+            dtr_labels = (
+                self._classify(self.dtr_classifier, self.buffered_dtr_instances)
+                if self.use_dtr
+                else []
+            )
+            output_columns = (
+                DTR_OUTPUT_COLUMNS if self.use_dtr else NO_DTR_OUTPUT_COLUMNS
+            )
+            tlink_column = output_columns.index("tlink")
+            for instance, dtr_index, tlink_index, inverted in self.buffered_rows:
+                tlink = tlink_labels[tlink_index]
+                # the instances are in text order, the rows are from the chemo
+                if inverted:
+                    tlink = LABEL_TO_INVERTED_LABEL[tlink]
+                instance[tlink_column] = tlink
+                if self.use_dtr:
+                    instance[output_columns.index("dtr")] = dtr_labels[dtr_index]
                 self.raw_events.append(instance)
+        self.buffered_rows = []
+        self.buffered_dtr_instances = []
+        self.buffered_tlink_instances = []
+        self.buffered_notes = 0
+
+    def _classify(self, classifier, instances: List[str]) -> List[str]:
+        return [
+            result["label"]
+            for result in classifier(instances, batch_size=self.batch_size)
+        ]
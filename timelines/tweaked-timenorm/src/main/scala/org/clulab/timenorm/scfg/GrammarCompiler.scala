@@ -0,0 +1,182 @@
+package org.clulab.timenorm.scfg
+
+import java.io.{ByteArrayOutputStream, DataOutputStream, File, FileOutputStream, InputStream}
+import java.net.URL
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Paths, StandardOpenOption}
+import java.nio.{BufferUnderflowException, ByteBuffer}
+
+import scala.collection.immutable.IndexedSeq
+import scala.collection.mutable
+import scala.io.Source
+import scala.util.Try
+
+/**
+ * Compiles [[SynchronousGrammar]]s to a compact binary form that loads without any text parsing.
+ *
+ * The binary form of `x.grammar` is written next to it as `x.grammar.bin`. It holds a table of the distinct
+ * symbols followed by the root symbols and the rules as indexes into that table, and it records the hash of the
+ * grammar text it was compiled from so that a stale binary is never used in place of an edited grammar.
+ * The grammar text is therefore still read and hashed each time a grammar is loaded, which is once per parser
+ * and not again for the parsers made from it with [[TemporalExpressionParser.withBeam]].
+ *
+ * Only a binary in a directory, i.e. a file: URL, is memory-mapped. A binary inside a jar, which is how the
+ * built-in grammars ship, is read onto the heap. Either way the rules are then built on the heap.
+ */
+object GrammarCompiler {
+
+  private val Magic = 0x53434647 // SCFG
+  private val Version = 1
+
+  /** The grammars that are compiled at build time. */
+  val BuiltInGrammars = Seq("en.grammar", "it.grammar", "es.grammar")
+
+  /**
+   * Compiles the built-in grammars in a classes directory, run at the process-classes phase of the build.
+   *
+   * @param args The classes directory, e.g. target/classes.
+   */
+  def main(args: Array[String]): Unit = {
+    val directory = new File(args(0), "org/clulab/timenorm")
+    for (name <- BuiltInGrammars) {
+      val grammarFile = new File(directory, name)
+      if (grammarFile.exists) {
+        val text = Source.fromFile(grammarFile, "UTF-8").mkString
+        val bytes = this.toBytes(SynchronousGrammar.fromString(text), text.hashCode)
+        val output = new FileOutputStream(new File(directory, name + ".bin"))
+        try output.write(bytes) finally output.close()
+        System.out.printf("Compiled %s to %d bytes%n", grammarFile, Int.box(bytes.length))
+      }
+    }
+  }
+
+  /**
+   * Serializes a grammar.
+   *
+   * @param grammar The grammar.
+   * @param textHash The hash of the grammar text the grammar was parsed from.
+   * @return The binary form of the grammar.
+   */
+  def toBytes(grammar: SynchronousGrammar, textHash: Int): Array[Byte] = {
+    val ids = mutable.LinkedHashMap.empty[String, Int]
+    def id(symbol: String): Int = ids.getOrElseUpdate(symbol, ids.size)
+    val roots = grammar.rootSymbols.toSeq.map(id)
+    val rules = for (rule <- grammar.rules) yield (
+      id(rule.symbol),
+      rule.sourceSeq.map(id),
+      rule.targetSeq.map(id),
+      rule.nonTerminalAlignment.toSeq)
+
+    val bytes = new ByteArrayOutputStream
+    val output = new DataOutputStream(bytes)
+    output.writeInt(Magic)
+    output.writeInt(Version)
+    output.writeInt(textHash)
+    output.writeInt(ids.size)
+    for (symbol <- ids.keys) {
+      val symbolBytes = symbol.getBytes(StandardCharsets.UTF_8)
+      output.writeInt(symbolBytes.length)
+      output.write(symbolBytes)
+    }
+    output.writeInt(roots.size)
+    roots.foreach(output.writeInt)
+    output.writeInt(rules.size)
+    for ((symbol, sourceSeq, targetSeq, alignment) <- rules) {
+      output.writeInt(symbol)
+      output.writeInt(sourceSeq.size)
+      sourceSeq.foreach(output.writeInt)
+      output.writeInt(targetSeq.size)
+      targetSeq.foreach(output.writeInt)
+      output.writeInt(alignment.size)
+      for ((targetIndex, sourceIndex) <- alignment) {
+        output.writeInt(targetIndex)
+        output.writeInt(sourceIndex)
+      }
+    }
+    output.flush()
+    bytes.toByteArray
+  }
+
+  /**
+   * Deserializes a grammar.
+   *
+   * @param buffer The binary form of a grammar.
+   * @param textHash The hash of the grammar text the binary form must have been compiled from.
+   * @return The grammar, or None if the binary form is malformed, of another version or compiled from other text.
+   */
+  def fromBytes(buffer: ByteBuffer, textHash: Int): Option[SynchronousGrammar] = {
+    try {
+      if (buffer.getInt != Magic || buffer.getInt != Version || buffer.getInt != textHash) {
+        None
+      } else {
+        val symbols = Array.fill(buffer.getInt) {
+          val symbolBytes = new Array[Byte](buffer.getInt)
+          buffer.get(symbolBytes)
+          new String(symbolBytes, StandardCharsets.UTF_8)
+        }
+        def readSeq(): IndexedSeq[String] = IndexedSeq.fill(buffer.getInt)(symbols(buffer.getInt))
+        val roots = Seq.fill(buffer.getInt)(symbols(buffer.getInt)).toSet
+        val rules = List.fill(buffer.getInt) {
+          val symbol = symbols(buffer.getInt)
+          val sourceSeq = readSeq()
+          val targetSeq = readSeq()
+          val alignment = Seq.fill(buffer.getInt)(buffer.getInt -> buffer.getInt).toMap
+          SynchronousGrammar.Rule(symbol, sourceSeq, targetSeq, alignment)
+        }
+        Some(new SynchronousGrammar(roots, rules))
+      }
+    } catch {
+      case _: BufferUnderflowException | _: IndexOutOfBoundsException | _: NegativeArraySizeException => None
+    }
+  }
+
+  /**
+   * A grammar with the hash of the text it was loaded from.
+   */
+  case class LoadedGrammar(grammar: SynchronousGrammar, textHash: Int)
+
+  /**
+   * Loads a grammar from its compiled form next to the grammar text if there is a current one,
+   * otherwise parses the grammar text.
+   *
+   * @param grammarURL The URL of a grammar file, in [[SynchronousGrammar.fromString]] format.
+   * @return The grammar.
+   */
+  def load(grammarURL: URL): LoadedGrammar = {
+    val grammarText = Source.fromURL(grammarURL, "UTF-8").mkString
+    val textHash = grammarText.hashCode
+    val compiled = Try(this.read(new URL(grammarURL.toExternalForm + ".bin"))).toOption.flatten
+    val grammar = compiled.flatMap(this.fromBytes(_, textHash)).getOrElse(SynchronousGrammar.fromString(grammarText))
+    LoadedGrammar(grammar, textHash)
+  }
+
+  /**
+   * Reads a file into a memory-mapped buffer, or any other URL into a heap buffer.
+   */
+  private def read(url: URL): Option[ByteBuffer] = {
+    if (url.getProtocol == "file") {
+      val path = Paths.get(url.toURI)
+      if (!path.toFile.exists) {
+        None
+      } else {
+        val channel = FileChannel.open(path, StandardOpenOption.READ)
+        try Some(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size)) finally channel.close()
+      }
+    } else {
+      val input: InputStream = url.openStream
+      try {
+        val bytes = new ByteArrayOutputStream
+        val chunk = new Array[Byte](65536)
+        var read = input.read(chunk)
+        while (read >= 0) {
+          bytes.write(chunk, 0, read)
+          read = input.read(chunk)
+        }
+        Some(ByteBuffer.wrap(bytes.toByteArray))
+      } finally {
+        input.close()
+      }
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package org.clulab.timenorm.scfg
 
 import scala.collection.immutable.{IndexedSeq, Seq}
+import scala.collection.mutable
 
 /**
  * A set of root symbols and synchronous rules that define a synchronous grammar.
@@ -25,11 +26,6 @@ import scala.collection.immutable.{IndexedSeq, Seq}
  */
 class SynchronousGrammar(val rootSymbols: Set[String], val rules: Seq[SynchronousGrammar.Rule]) {
 
-  private val rulePrefixMap = PrefixMultiMap.empty[String, SynchronousGrammar.Rule]
-  for (rule <- rules) {
-    this.rulePrefixMap += (rule.sourceSeq, rule)
-  }
-  
   private val numberRegex = "^\\[Int:(\\d*)-(\\d*)\\]$".r
   private val numberRanges: Set[Range.Inclusive] = (
     for {
@@ -38,6 +34,39 @@ class SynchronousGrammar(val rootSymbols: Set[String], val rules: Seq[Synchronou
     } yield {
       begin.toInt to end.toInt
     }).toSet
+  // the symbol of each range, formatted once rather than for every number token
+  private val numberRangeSymbols: Array[(Range.Inclusive, String)] =
+    this.numberRanges.toArray.map(range => (range, "[Int:%d-%d]".format(range.start, range.end)))
+
+  /**
+   * The interned symbols of this grammar, classified once when the grammar is loaded.
+   */
+  val symbols: SynchronousGrammar.SymbolTable = new SynchronousGrammar.SymbolTable(
+    this.rootSymbols.toList ++ this.rules.flatMap(rule => rule.symbol +: (rule.sourceSeq ++ rule.targetSeq)),
+    this.rules.flatMap(_.sourceSeq))
+
+  /**
+   * For each symbol id, the distinct rules whose source side starts with that symbol compiled to symbol ids,
+   * in grammar order.
+   */
+  private[scfg] val compiledRulesStartingWith: Array[Array[SynchronousGrammar.CompiledRule]] = {
+    val buckets = Array.fill(this.symbols.size)(mutable.ArrayBuffer.empty[SynchronousGrammar.CompiledRule])
+    val seen = mutable.HashSet.empty[SynchronousGrammar.Rule]
+    for (rule <- this.rules; if rule.sourceSeq.nonEmpty && seen.add(rule)) {
+      buckets(this.symbols.id(rule.sourceSeq.head)) += this.compile(rule)
+    }
+    buckets.map(_.toArray)
+  }
+
+  /**
+   * Compiles a rule, e.g. one created while parsing, to the symbol ids of this grammar.
+   *
+   * @param rule A rule whose symbols may or may not be in this grammar.
+   * @return The rule with its symbol and source side as symbol ids, -1 for symbols not in this grammar.
+   */
+  private[scfg] def compile(rule: SynchronousGrammar.Rule): SynchronousGrammar.CompiledRule = {
+    new SynchronousGrammar.CompiledRule(rule, this.symbols.id(rule.symbol), rule.sourceSeq.map(this.symbols.id).toArray)
+  }
   
   /**
    * Gets all non-terminal symbols whose range allows a particular number.
@@ -47,9 +76,9 @@ class SynchronousGrammar(val rootSymbols: Set[String], val rules: Seq[Synchronou
    */
   def sourceSymbolsForNumber(number: Int): Set[String] = {
     val symbolsWithRanges =
-      for (range <- this.numberRanges; if range.contains(number))
-        yield "[Int:%d-%d]".format(range.start, range.end)
-    symbolsWithRanges + "[Int]" 
+      for ((range, symbol) <- this.numberRangeSymbols; if range.contains(number))
+        yield symbol
+    symbolsWithRanges.toSet + "[Int]" 
   }
 
   /**
@@ -59,7 +88,16 @@ class SynchronousGrammar(val rootSymbols: Set[String], val rules: Seq[Synchronou
    * @return All rules whose source side starts with the given tokens.
    */
   def sourceSeqStartsWith(tokens: Seq[String]): Set[SynchronousGrammar.Rule] = {
-    this.rulePrefixMap.getAllWithPrefix(tokens)
+    if (tokens.isEmpty) {
+      this.rules.toSet
+    } else {
+      val id = this.symbols.id(tokens.head)
+      if (id < 0) {
+        Set.empty
+      } else {
+        this.compiledRulesStartingWith(id).iterator.map(_.rule).filter(_.sourceSeq.startsWith(tokens)).toSet
+      }
+    }
   }
 
   /**
@@ -69,7 +107,8 @@ class SynchronousGrammar(val rootSymbols: Set[String], val rules: Seq[Synchronou
    * @return All rules whose source side starts with the given token.
    */
   def sourceSeqStartsWith(token: String): Set[SynchronousGrammar.Rule] = {
-    this.rulePrefixMap.getAllWithPrefix(Seq(token))
+    val id = this.symbols.id(token)
+    if (id < 0) Set.empty else this.compiledRulesStartingWith(id).iterator.map(_.rule).toSet
   }
   
   /**
@@ -94,7 +133,23 @@ object SynchronousGrammar {
    * @param token A token from a grammar.
    * @return True if the token is a terminal, false otherwise.
    */
-  def isTerminal(token: String): Boolean = !token.matches("^\\[.*\\]$")
+  def isTerminal(token: String): Boolean = {
+    // equivalent to !token.matches("^\\[.*\\]$"), where . does not match line terminators
+    val last = token.length - 1
+    if (last < 1 || token.charAt(0) != '[' || token.charAt(last) != ']') {
+      true
+    } else {
+      var i = 1
+      while (i < last && !isLineTerminator(token.charAt(i))) {
+        i += 1
+      }
+      i < last
+    }
+  }
+
+  private def isLineTerminator(c: Char): Boolean = {
+    c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029'
+  }
 
   /**
    * Strips any sub-type information from a non-terminal symbol.
@@ -104,7 +159,25 @@ object SynchronousGrammar {
    * @param token A non-terminal token from the grammar.
    * @return A non-terminal token without the sub-type information.
    */
-  def basicSymbol(token: String): String = token.replaceAll(":[^\\]]*", "")
+  def basicSymbol(token: String): String = {
+    // equivalent to token.replaceAll(":[^\\]]*", "")
+    var colon = token.indexOf(':')
+    if (colon < 0) {
+      token
+    } else {
+      val builder = new java.lang.StringBuilder(token.length)
+      var start = 0
+      while (colon >= 0) {
+        builder.append(token, start, colon)
+        start = colon + 1
+        while (start < token.length && token.charAt(start) != ']') {
+          start += 1
+        }
+        colon = token.indexOf(':', start)
+      }
+      builder.append(token, start, token.length).toString
+    }
+  }
 
   /**
    * Determines whether a token is a number or not.
@@ -114,7 +187,14 @@ object SynchronousGrammar {
    * @param token A token from a grammar.
    * @return True if the token is a number, false otherwise.
    */
-  def isNumber(token: String): Boolean = token.matches("^\\d+$")
+  def isNumber(token: String): Boolean = {
+    // equivalent to token.matches("^\\d+$")
+    var i = token.length - 1
+    while (i >= 0 && token.charAt(i) >= '0' && token.charAt(i) <= '9') {
+      i -= 1
+    }
+    token.nonEmpty && i < 0
+  }
   
   /**
    * Determines whether a token is a nil non-terminal symbol or not.
@@ -186,6 +266,9 @@ object SynchronousGrammar {
    *        that the first source non-terminal is the second target non-terminal and vice versa. 
    */
   case class Rule(symbol: String, sourceSeq: IndexedSeq[String], targetSeq: IndexedSeq[String], nonTerminalAlignment: Map[Int, Int]) {
+
+    // rules are hashed constantly while filling the chart, compute the usual case class hash only once
+    override val hashCode: Int = scala.util.hashing.MurmurHash3.productHash(this)
     
     /**
      * Strips any sub-type information from this rule's symbol.
@@ -200,53 +283,131 @@ object SynchronousGrammar {
      * See [[SynchronousGrammar.isNil]].
      */
     val isNil = SynchronousGrammar.isNil(this.symbol)
-  }
-}
 
-private[timenorm] class PrefixMultiMap[K, V] {
-
-  var suffixes = Map.empty[K, PrefixMultiMap[K, V]]
-  var values = Set.empty[V]
+    /**
+     * The number of terminals at the start of the source side.
+     */
+    private[scfg] val initialTerminalCount: Int = this.sourceSeq.takeWhile(SynchronousGrammar.isTerminal).size
 
-  def +=(key: Seq[K], value: V): Unit = {
-    if (key.isEmpty) {
-      this.values += value
-    } else {
-      val head = key.head
-      if (!this.suffixes.contains(head)) {
-        this.suffixes += head -> new PrefixMultiMap[K, V]
+    // for each source index, the index of the first non-terminal at or after it
+    private val sourceTerminalRunEnds: Array[Int] = {
+      val ends = new Array[Int](this.sourceSeq.size + 1)
+      ends(this.sourceSeq.size) = this.sourceSeq.size
+      for (i <- this.sourceSeq.indices.reverse) {
+        ends(i) = if (SynchronousGrammar.isTerminal(this.sourceSeq(i))) ends(i + 1) else i
       }
-      this.suffixes(head) += (key.tail, value)
+      ends
     }
-  }
 
-  def get(key: Seq[K]): Set[V] = {
-    this.getMap(key) match {
-      case None => Set.empty
-      case Some(map) => map.values
+    /**
+     * Whether each token of the target side is a terminal.
+     */
+    private[scfg] val targetTerminals: Array[Boolean] = this.targetSeq.map(SynchronousGrammar.isTerminal).toArray
+
+    /**
+     * Determines whether the source side is all terminals from one index up to another.
+     *
+     * @param from The first source index.
+     * @param until The source index after the last one.
+     * @return True if every source token in the range is a terminal.
+     */
+    private[scfg] def sourceTerminalsBetween(from: Int, until: Int): Boolean = {
+      from >= until || this.sourceTerminalRunEnds(from) >= until
     }
   }
 
-  def getAll: Set[V] = {
-    this.values ++ this.suffixes.values.flatMap(_.getAll)
-  }
+  /**
+   * A flyweight view of a rule as symbol ids, shared by every parse that uses the rule.
+   *
+   * @param rule The rule.
+   * @param symbolId The id of the rule's symbol.
+   * @param sourceIds The ids of the rule's source side.
+   */
+  private[scfg] final class CompiledRule(val rule: Rule, val symbolId: Int, val sourceIds: Array[Int])
 
-  def getAllWithPrefix(key: Seq[K]): Set[V] = {
-    this.getMap(key) match {
-      case None => Set.empty
-      case Some(map) => map.getAll
+  /**
+   * The symbols of a grammar interned as consecutive integer ids, with their classification precomputed
+   * so that parsing needs no string inspection of grammar symbols.
+   *
+   * Ids follow the sorted order of the symbols.  Lookups go through an open-addressing table
+   * sized to keep probe sequences short, using the hash that each String already caches.
+   *
+   * @constructor Interns the symbols.
+   * @param allSymbols The symbols, possibly with duplicates.
+   * @param sourceSymbols The symbols used on the source side of rules, possibly with duplicates.
+   */
+  class SymbolTable(allSymbols: Seq[String], sourceSymbols: Seq[String]) {
+    private val symbolArray: Array[String] = allSymbols.distinct.sorted.toArray
+    private val slots: Array[Int] = {
+      var capacity = 16
+      while (capacity < this.symbolArray.length * 4) {
+        capacity *= 2
+      }
+      val table = Array.fill(capacity)(-1)
+      for (id <- this.symbolArray.indices) {
+        var slot = SymbolTable.spread(this.symbolArray(id).hashCode) & (capacity - 1)
+        while (table(slot) >= 0) {
+          slot = (slot + 1) & (capacity - 1)
+        }
+        table(slot) = id
+      }
+      table
+    }
+    private val terminals: Array[Boolean] = this.symbolArray.map(SynchronousGrammar.isTerminal)
+    private val numbers: Array[Boolean] = this.symbolArray.map(SynchronousGrammar.isNumber)
+    private val nils: Array[Boolean] = this.symbolArray.map(SynchronousGrammar.isNil)
+    private val sources: Array[Boolean] = {
+      val flags = new Array[Boolean](this.symbolArray.length)
+      for (symbol <- sourceSymbols) {
+        flags(this.id(symbol)) = true
+      }
+      flags
     }
-  }
 
-  private def getMap(key: Seq[K]): Option[PrefixMultiMap[K, V]] = {
-    if (key.isEmpty) {
-      Some(this)
-    } else {
-      this.suffixes.get(key.head).flatMap(_.getMap(key.tail))
+    /**
+     * @return The number of distinct symbols.
+     */
+    def size: Int = this.symbolArray.length
+
+    /**
+     * @param symbol A symbol.
+     * @return The id of the symbol, or -1 if it is not in the grammar.
+     */
+    def id(symbol: String): Int = {
+      val mask = this.slots.length - 1
+      var slot = SymbolTable.spread(symbol.hashCode) & mask
+      var id = this.slots(slot)
+      while (id >= 0 && this.symbolArray(id) != symbol) {
+        slot = (slot + 1) & mask
+        id = this.slots(slot)
+      }
+      id
+    }
+
+    /**
+     * @param id A symbol id.
+     * @return The symbol.
+     */
+    def symbol(id: Int): String = this.symbolArray(id)
+
+    def isTerminal(id: Int): Boolean = this.terminals(id)
+
+    def isNumber(id: Int): Boolean = this.numbers(id)
+
+    def isNil(id: Int): Boolean = this.nils(id)
+
+    /**
+     * @param symbol A token or symbol.
+     * @return True if the symbol appears on the source side of some rule.
+     */
+    def isSourceSymbol(symbol: String): Boolean = {
+      val id = this.id(symbol)
+      id >= 0 && this.sources(id)
     }
   }
-}
 
-private[timenorm] object PrefixMultiMap {
-  def empty[K, V] = new PrefixMultiMap[K, V]
+  private object SymbolTable {
+    // mixes the high bits of a String hash into the low bits used to pick a slot
+    def spread(hash: Int): Int = hash ^ (hash >>> 16)
+  }
 }
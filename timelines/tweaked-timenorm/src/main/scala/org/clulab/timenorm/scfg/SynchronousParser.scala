@@ -8,10 +8,18 @@ import scala.util.{Try, control}
 /**
  * A parser for synchronous grammars.
  *
+ * The parser can optionally run with a bounded beam. Once a chart entry is filled, only the `beamWidth` best
+ * complete parses of each symbol and the `beamWidth` smallest partial parses of each rule position are kept.
+ * The complete parses are ranked by the ranking given to [[parseAll]], e.g. the ambiguity heuristic of the
+ * [[TemporalExpressionParser]], with ties and unranked parses going to the parse with the fewest rules.
+ * Pruning trades completeness for a bound on the work done for long or highly ambiguous inputs,
+ * and can change which parse is best: a reading dropped from a small span is gone from every span containing it.
+ *
  * @constructor Create a new parser from a synchronous grammar.
  * @param grammar A synchronous grammar.
+ * @param beamWidth The number of parses kept per symbol or rule position in each chart entry, 0 for no limit.
  */
-class SynchronousParser(grammar: SynchronousGrammar) {
+class SynchronousParser(grammar: SynchronousGrammar, beamWidth: Int = 0) {
 
   import SynchronousParser._
   
@@ -32,11 +40,23 @@ class SynchronousParser(grammar: SynchronousGrammar) {
    * @return The parsed tree of non-terminals and target tokens.
    */
   def parseAll(sourceTokens: IndexedSeq[String]): IndexedSeq[Tree.NonTerminal] = {
+    this.parseAll(sourceTokens, BySize)
+  }
+
+  /**
+   * Parse the source tokens into a tree non-terminals and target tokens.
+   *
+   * @param sourceTokens The source tokens to be parsed.
+   * @param ranking Ranks the complete parses of one symbol in a chart entry for the beam. Unused without a beam.
+   * @return The parsed tree of non-terminals and target tokens.
+   */
+  def parseAll(sourceTokens: IndexedSeq[String],
+               ranking: BeamRanking): IndexedSeq[Tree.NonTerminal] = {
     if (sourceTokens.isEmpty) {
       throw new UnsupportedOperationException("Cannot parse empty token sequence")
     }
-    val chart = this.parseChart(sourceTokens)
-    val completes = chart(sourceTokens.size)(0).completes
+    val chart = this.parseChart(sourceTokens, ranking)
+    val completes = chart(sourceTokens.size, 0).completes
     val roots = completes.filter(parse => this.grammar.rootSymbols.contains(parse.rule.symbol))
     val trees = roots.map(_.toTargetTree).toIndexedSeq
     if (trees.isEmpty) {
@@ -45,7 +65,7 @@ class SynchronousParser(grammar: SynchronousGrammar) {
         for {
           size <- 1 to nTokens
           start <- 0 until (nTokens - size + 1)
-          complete <- chart(size)(start).completes
+          complete <- chart(size, start).completes
         } yield {
           "%s(%s)".format(complete.rule.symbol, sourceTokens.slice(start, start + size).mkString(","))
         }
@@ -65,11 +85,12 @@ class SynchronousParser(grammar: SynchronousGrammar) {
     control.Exception.catching(classOf[UnsupportedOperationException]).withTry(parseAll(sourceTokens))
   }
 
-  private def parseChart(sourceTokens: IndexedSeq[String]): Array[Array[ChartEntry]] = {
+  private def parseChart(sourceTokens: IndexedSeq[String],
+                         ranking: BeamRanking): Chart = {
     val nTokens = sourceTokens.size
-    val chart = Array.tabulate(nTokens + 1, nTokens) {
-      (size, start) => if (size == 0 || start + size > nTokens) null else ChartEntry()
-    }
+    val chart = new Chart(nTokens)
+    // tokens not in the grammar get -1, which matches no rule symbol
+    val tokenIds = sourceTokens.map(this.grammar.symbols.id).toArray
 
     // special handling of [Number]: pass through tokens that are numbers 
     for (start <- 0 until nTokens) {
@@ -77,22 +98,22 @@ class SynchronousParser(grammar: SynchronousGrammar) {
       if (SynchronousGrammar.isNumber(token)) {
         for (symbol <- grammar.sourceSymbolsForNumber(token.toInt)) {
           val rule = SynchronousGrammar.Rule(symbol, IndexedSeq(token), IndexedSeq(token), Map.empty)
-          chart(1)(start).completes += Parse(rule, IndexedSeq.empty)
+          chart.getOrCreate(1, start).completes += Parse(rule, IndexedSeq.empty)(this.grammar.symbols.id(symbol))
         }
       }
     }
 
     // fill rules that start with terminals
     for (start <- 0 until nTokens) {
-      for (rule <- grammar.sourceSeqStartsWith(sourceTokens(start))) {
-        val initialTerminals = rule.sourceSeq.takeWhile(SynchronousGrammar.isTerminal)
-        val size = initialTerminals.size
-        if (sourceTokens.slice(start, start + size) == initialTerminals) {
-          val entry = chart(size)(start)
+      for (compiled <- this.rulesStartingWith(tokenIds(start))) {
+        val rule = compiled.rule
+        val size = rule.initialTerminalCount
+        if (size > 0 && start + size <= nTokens && matches(tokenIds, start, compiled.sourceIds, 0, size)) {
+          val entry = chart.getOrCreate(size, start)
           if (rule.sourceSeq.size == size) {
-            entry.completes += Parse(rule, IndexedSeq.empty)
+            entry.completes += Parse(rule, IndexedSeq.empty)(compiled.symbolId)
           } else {
-            entry.partials += PartialParse(rule, size, IndexedSeq.empty)
+            entry.partials += PartialParse(rule, size, IndexedSeq.empty)(compiled)
           }
         }
       }
@@ -100,47 +121,53 @@ class SynchronousParser(grammar: SynchronousGrammar) {
 
     // fill in the chart from the smallest sizes to the biggest sizes
     for (size <- 1 to nTokens; start <- 0 to (nTokens - size)) {
-      val entry = chart(size)(start)
+      checkInterrupted()
 
       // look for ways to create entries of size `size` from the current partial parses
       for (size1 <- 1 until size) {
         val start2 = start + size1
         val size2 = size - size1
-        for (partial <- chart(size1)(start).partials) {
+        val entry1 = chart(size1, start)
+        val entry2 = chart(size2, start2)
+        for (partial <- entry1.partials) {
+          val compiled = partial.compiled
 
           // partials that can be advanced to `size` using terminals
           val newSourceSeqIndex = partial.sourceSeqIndex + size2
-          val symbolSeq = partial.rule.sourceSeq.slice(partial.sourceSeqIndex, newSourceSeqIndex)
-          val tokenSeq = sourceTokens.slice(start2, start2 + size2)
-          if (symbolSeq.forall(SynchronousGrammar.isTerminal) && symbolSeq == tokenSeq) {
-            if (partial.rule.sourceSeq.size == newSourceSeqIndex) {
-              entry.completes += Parse(partial.rule, partial.nonTerminalRules)
+          if (newSourceSeqIndex <= compiled.sourceIds.length &&
+              partial.rule.sourceTerminalsBetween(partial.sourceSeqIndex, newSourceSeqIndex) &&
+              matches(tokenIds, start2, compiled.sourceIds, partial.sourceSeqIndex, size2)) {
+            if (compiled.sourceIds.length == newSourceSeqIndex) {
+              chart.getOrCreate(size, start).completes += Parse(partial.rule, partial.nonTerminalRules)(compiled.symbolId)
             } else {
-              entry.partials += PartialParse(partial.rule, newSourceSeqIndex, partial.nonTerminalRules)
+              chart.getOrCreate(size, start).partials +=
+                PartialParse(partial.rule, newSourceSeqIndex, partial.nonTerminalRules)(compiled)
             }
           }
 
           // partials that can be advanced to `size` using completed non-terminals
-          for (complete <- chart(size2)(start2).completes) {
-            if (partial.rule.sourceSeq(partial.sourceSeqIndex) == complete.rule.symbol) {
+          val nextId = compiled.sourceIds(partial.sourceSeqIndex)
+          for (complete <- entry2.completes) {
+            if (nextId == complete.symbolId) {
               val sourceSeqIndex = partial.sourceSeqIndex + 1
               val nonTerminalRules = partial.nonTerminalRules :+ complete
-              if (partial.rule.sourceSeq.size == sourceSeqIndex) {
-                entry.completes += Parse(partial.rule, nonTerminalRules)
+              if (compiled.sourceIds.length == sourceSeqIndex) {
+                chart.getOrCreate(size, start).completes += Parse(partial.rule, nonTerminalRules)(compiled.symbolId)
               } else {
-                entry.partials += PartialParse(partial.rule, sourceSeqIndex, nonTerminalRules)
+                chart.getOrCreate(size, start).partials +=
+                  PartialParse(partial.rule, sourceSeqIndex, nonTerminalRules)(compiled)
               }
             }
           }
         }
 
         // expand complete parses if there are Nil parses beside them
-        for (complete1 <- chart(size1)(start).completes) {
-          for (complete2 <- chart(size2)(start2).completes) {
+        for (complete1 <- entry1.completes) {
+          for (complete2 <- entry2.completes) {
             if (!complete1.rule.isNil && complete2.rule.isNil) {
-              entry.completes += complete1
+              chart.getOrCreate(size, start).completes += complete1
             } else if (complete1.rule.isNil && !complete2.rule.isNil) {
-              entry.completes += complete2            
+              chart.getOrCreate(size, start).completes += complete2
             }
           }
         }
@@ -149,25 +176,108 @@ class SynchronousParser(grammar: SynchronousGrammar) {
       // create parses for rules that start with any of the currently complete parses
       // NOTE: we have to use a queue here because the loop itself may add more completed
       // rules that we then also need to process
-      val queue = mutable.Queue.empty ++ entry.completes
-      while (queue.nonEmpty) {
-        val complete = queue.dequeue
-        for (rule <- grammar.sourceSeqStartsWith(complete.rule.symbol)) {
-          if (rule.sourceSeq.tail.isEmpty) {
-            val complete2 = Parse(rule, IndexedSeq(complete))
-            queue.enqueue(complete2)
-            entry.completes += complete2
-          } else {
-            entry.partials += PartialParse(rule, 1, IndexedSeq(complete))
+      val entry = chart(size, start)
+      if (entry.completes.nonEmpty) {
+        val queue = mutable.Queue.empty ++ entry.completes
+        while (queue.nonEmpty) {
+          checkInterrupted()
+          val complete = queue.dequeue
+          for (compiled <- this.rulesStartingWith(complete.symbolId)) {
+            val rule = compiled.rule
+            if (rule.sourceSeq.tail.isEmpty) {
+              val complete2 = Parse(rule, IndexedSeq(complete))(compiled.symbolId)
+              queue.enqueue(complete2)
+              entry.completes += complete2
+            } else {
+              entry.partials += PartialParse(rule, 1, IndexedSeq(complete))(compiled)
+            }
           }
         }
       }
+      if (this.beamWidth > 0) {
+        this.prune(entry, ranking)
+      }
     }
     chart
   }
+
+  /**
+   * Removes all but the `beamWidth` best complete parses of each symbol
+   * and the `beamWidth` smallest partial parses of each rule position from a chart entry.
+   */
+  private def prune(entry: ChartEntry, ranking: BeamRanking): Unit = {
+    if (entry.completes.size > this.beamWidth) {
+      for (parses <- entry.completes.groupBy(_.symbolId).values; if parses.size > this.beamWidth) {
+        val bySize = parses.toIndexedSeq.sortBy(_.size)
+        val kept =
+          if (ranking.ranks(bySize.head.rule)) ranking.rank(bySize.map(_.toTargetTree))
+          else bySize.indices
+        entry.completes --= parses
+        entry.completes ++= kept.take(this.beamWidth).map(bySize)
+      }
+    }
+    if (entry.partials.size > this.beamWidth) {
+      for (parses <- entry.partials.groupBy(partial => (partial.compiled, partial.sourceSeqIndex)).values;
+           if parses.size > this.beamWidth) {
+        entry.partials --= parses.toSeq.sortBy(_.size).drop(this.beamWidth)
+      }
+    }
+  }
+
+  private def rulesStartingWith(symbolId: Int): Array[SynchronousGrammar.CompiledRule] = {
+    if (symbolId < 0) NoRules else this.grammar.compiledRulesStartingWith(symbolId)
+  }
+
+  /**
+   * Compares a span of the source tokens to a span of a rule's source side without copying either.
+   */
+  private def matches(tokens: Array[Int], tokenStart: Int,
+                      symbols: Array[Int], symbolStart: Int, length: Int): Boolean = {
+    var i = 0
+    while (i < length && tokens(tokenStart + i) == symbols(symbolStart + i)) {
+      i += 1
+    }
+    i == length
+  }
 }
 
 object SynchronousParser {
+
+  private val NoRules = Array.empty[SynchronousGrammar.CompiledRule]
+
+  /**
+   * Ranks the complete parses of one symbol in a chart entry for the beam.
+   */
+  trait BeamRanking {
+    /**
+     * @return Whether the parses of the rule's symbol are ranked, otherwise the ones with the fewest rules are kept.
+     */
+    def ranks(rule: SynchronousGrammar.Rule): Boolean
+
+    /**
+     * @param trees The trees of the parses, ordered from fewest to most rules.
+     * @return The indexes of the trees, best first.
+     */
+    def rank(trees: IndexedSeq[Tree.NonTerminal]): IndexedSeq[Int]
+  }
+
+  /**
+   * Keeps the complete parses with the fewest rules.
+   */
+  val BySize: BeamRanking = new BeamRanking {
+    override def ranks(rule: SynchronousGrammar.Rule): Boolean = false
+    override def rank(trees: IndexedSeq[Tree.NonTerminal]): IndexedSeq[Int] = trees.indices
+  }
+
+  /**
+   * Abandons the current parse if its thread has been interrupted, e.g. by cancelling its Future,
+   * so that a runaway parse does not keep running after its caller has given up on it.
+   */
+  private[scfg] def checkInterrupted(): Unit = {
+    if (Thread.currentThread.isInterrupted) {
+      throw new java.util.concurrent.CancellationException("parse interrupted")
+    }
+  }
   
   /**
    * A tree of non-terminals and tokens.
@@ -204,14 +314,26 @@ object SynchronousParser {
     case class NonTerminal(rule: SynchronousGrammar.Rule, children: List[Tree]) extends Tree
   }
 
+  /**
+   * A complete parse of a rule.  The id of the rule's symbol is carried outside of the case class fields,
+   * so it plays no part in equality.
+   */
   private[SynchronousParser] case class Parse(
       rule: SynchronousGrammar.Rule,
-      nonTerminalRules: IndexedSeq[Parse]) {
+      nonTerminalRules: IndexedSeq[Parse])(val symbolId: Int) {
+
+    // parses are hashed on every insertion into a chart entry, compute the usual case class hash only once
+    override val hashCode: Int = scala.util.hashing.MurmurHash3.productHash(this)
+
+    /**
+     * The number of rules in this parse.
+     */
+    val size: Int = this.nonTerminalRules.foldLeft(1)(_ + _.size)
     
     def toTargetTree: Tree.NonTerminal = {
       var nonTerminalIndex = -1
       val children = for ((token, i) <- this.rule.targetSeq.zipWithIndex) yield {
-        if (SynchronousGrammar.isTerminal(token)) {
+        if (this.rule.targetTerminals(i)) {
           Tree.Terminal(token)
         } else {
           nonTerminalIndex += 1
@@ -254,9 +376,47 @@ object SynchronousParser {
   private[SynchronousParser] case class PartialParse(
     rule: SynchronousGrammar.Rule,
     sourceSeqIndex: Int,
-    nonTerminalRules: IndexedSeq[Parse])
+    nonTerminalRules: IndexedSeq[Parse])(val compiled: SynchronousGrammar.CompiledRule) {
+
+    override val hashCode: Int = scala.util.hashing.MurmurHash3.productHash(this)
+
+    /**
+     * The number of rules in this partial parse, including its own.
+     */
+    val size: Int = this.nonTerminalRules.foldLeft(1)(_ + _.size)
+  }
 
   private[SynchronousParser] case class ChartEntry(
     completes: mutable.Set[Parse] = mutable.Set.empty,
     partials: mutable.Set[PartialParse] = mutable.Set.empty)
+
+  private val EmptyEntry = ChartEntry(mutable.Set.empty, mutable.Set.empty)
+
+  /**
+   * The parse chart, one entry per span size and start, in a single flat array.
+   * Entries are only allocated once something is added to them.
+   *
+   * @param nTokens The number of tokens being parsed.
+   */
+  private[SynchronousParser] final class Chart(nTokens: Int) {
+    private val entries = new Array[ChartEntry]((nTokens + 1) * nTokens)
+
+    /**
+     * @return The entry for the span, or a shared empty entry that must not be modified.
+     */
+    def apply(size: Int, start: Int): ChartEntry = {
+      val entry = this.entries(size * nTokens + start)
+      if (entry == null) EmptyEntry else entry
+    }
+
+    def getOrCreate(size: Int, start: Int): ChartEntry = {
+      val index = size * nTokens + start
+      var entry = this.entries(index)
+      if (entry == null) {
+        entry = ChartEntry()
+        this.entries(index) = entry
+      }
+      entry
+    }
+  }
 }
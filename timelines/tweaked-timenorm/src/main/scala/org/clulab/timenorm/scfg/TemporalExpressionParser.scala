@@ -13,6 +13,56 @@ import scala.util.{Failure, Success, Try}
 
 object TemporalExpressionParser {
 
+  private val sharedParsers = new java.util.concurrent.ConcurrentHashMap[String, TemporalExpressionParser]
+
+  /** A built-in time parser shared by every caller in the process, created on
+    * first use. Parsers keep no per-parse state, so one instance can serve
+    * any number of threads.
+    *
+    * @param language
+    *   "en", "it" or "es".
+    */
+  def shared(language: String): TemporalExpressionParser = {
+    this.sharedParsers.computeIfAbsent(language, new java.util.function.Function[String, TemporalExpressionParser] {
+      override def apply(language: String): TemporalExpressionParser = {
+        val tokenizer = language match {
+          case "en" | "es" => DefaultTokenizer
+          case "it" => ItalianTokenizer
+          case _ => throw new IllegalArgumentException("No built-in grammar for language " + language)
+        }
+        new TemporalExpressionParser(
+          grammarURL = this.getClass.getResource("/org/clulab/timenorm/" + language + ".grammar"),
+          tokenize = tokenizer
+        )
+      }
+    })
+  }
+
+  /** A built-in time parser with a bounded beam, shared by every caller in
+    * the process that asks for the same language and bounds.
+    *
+    * @param language
+    *   "en", "it" or "es".
+    * @param beamWidth
+    *   The number of parses kept per symbol or rule position in each chart
+    *   entry, 0 for no limit.
+    * @param maxParses
+    *   The number of [[Temporal]]s returned by [[TemporalExpressionParser.parseAll]]
+    *   after sorting them by the heuristic, 0 for no limit.
+    */
+  def shared(language: String, beamWidth: Int, maxParses: Int): TemporalExpressionParser = {
+    if (beamWidth <= 0 && maxParses <= 0) {
+      this.shared(language)
+    } else {
+      // every bound shares the grammar that was loaded for the language
+      val unbounded = this.shared(language)
+      val key = language + ":" + beamWidth + ":" + maxParses
+      this.sharedParsers.computeIfAbsent(key, new java.util.function.Function[String, TemporalExpressionParser] {
+        override def apply(key: String): TemporalExpressionParser = unbounded.withBeam(beamWidth, maxParses)
+      })
+    }
+  }
+
   /** The built-in English time parser.
     */
   def en(): TemporalExpressionParser = new TemporalExpressionParser(
@@ -89,8 +139,9 @@ object TemporalExpressionParser {
   * val value = temporal.timeMLValue
   * }}}
   *
-  * @constructor
-  *   Creates a parser from a URL to a grammar file.
+  * The public constructor creates a parser from a URL to a grammar file. The
+  * grammar is loaded once, parsers made from it with [[withBeam]] share it.
+  *
   * @param grammarURL
   *   The URL of a grammar file, in [[SynchronousGrammar.fromString]] format. If
   *   not specified, the default English grammar on the classpath is used. Note
@@ -100,18 +151,55 @@ object TemporalExpressionParser {
   *   A function that splits a string into tokens. The default tokenizer is
   *   appropriate for the default English grammar. Other languages may require
   *   alternate tokenizers.
+  * @param beamWidth
+  *   The number of parses kept per symbol or rule position in each chart
+  *   entry, 0 for no limit. Complete parses that resolve to a [[Temporal]]
+  *   are ranked by the same heuristic as the final answers, but a beam can
+  *   still change the answer. See [[SynchronousParser]].
+  * @param maxParses
+  *   The number of [[Temporal]]s returned by [[parseAll]] after sorting them
+  *   by the heuristic, 0 for no limit. It never changes the result of
+  *   [[parse]].
   */
-class TemporalExpressionParser(
-    grammarURL: URL = classOf[TemporalExpressionParser].getResource(
-      "/org/clulab/timenorm/en.grammar"
-    ),
-    tokenize: String => IndexedSeq[String] = DefaultTokenizer
+class TemporalExpressionParser private (
+    loaded: GrammarCompiler.LoadedGrammar,
+    tokenize: String => IndexedSeq[String],
+    beamWidth: Int,
+    maxParses: Int
 ) {
+
+  def this(
+      grammarURL: URL = classOf[TemporalExpressionParser].getResource(
+        "/org/clulab/timenorm/en.grammar"
+      ),
+      tokenize: String => IndexedSeq[String] = DefaultTokenizer,
+      beamWidth: Int = 0,
+      maxParses: Int = 0
+  ) = this(GrammarCompiler.load(grammarURL), tokenize, beamWidth, maxParses)
+
   private val logger = Logger.getLogger(this.getClass.getName)
-  private val grammarText = Source.fromURL(grammarURL, "UTF-8").mkString
-  private val grammar = SynchronousGrammar.fromString(grammarText)
-  private val sourceSymbols = grammar.sourceSymbols()
-  private val parser = new SynchronousParser(grammar)
+  private val grammar = loaded.grammar
+  private val parser = new SynchronousParser(grammar, beamWidth)
+
+  /** Identifies the grammar text and the beam bounds. The same expression and
+    * anchor can only parse differently under another version.
+    */
+  val version: String =
+    "%08x:%d:%d".format(loaded.textHash, beamWidth, maxParses)
+
+  /** Creates a parser with the same grammar and tokenizer that prunes
+    * ambiguous parses with a bounded beam. The grammar is not loaded again.
+    *
+    * @param beamWidth
+    *   The number of parses kept per symbol or rule position in each chart
+    *   entry, 0 for no limit.
+    * @param maxParses
+    *   The number of [[Temporal]]s returned by [[parseAll]] after sorting them
+    *   by the heuristic, 0 for no limit.
+    */
+  def withBeam(beamWidth: Int, maxParses: Int): TemporalExpressionParser = {
+    new TemporalExpressionParser(this.loaded, this.tokenize, beamWidth, maxParses)
+  }
 
   /** Tries to parse a source string into a single [[Temporal]] object.
     *
@@ -140,13 +228,13 @@ class TemporalExpressionParser(
   def parseAll(sourceText: String, anchor: TimeSpan): Try[Seq[Temporal]] = {
     // tokenize the string, filtering out any tokens not in the grammar
     val tokens = this.tokenize(sourceText).filter { token =>
-      this.sourceSymbols.contains(token) || SynchronousGrammar.isNumber(token)
+      this.grammar.symbols.isSourceSymbol(token) || SynchronousGrammar.isNumber(token)
     }
 
     // parse the tokens into TemporalParses, failing if there is a syntactic error
     val parsesTry =
       try {
-        val trees = this.parser.parseAll(tokens)
+        val trees = this.parser.parseAll(tokens, this.beamRankFor(anchor))
         // two unique trees can generate the same TemporalParse, so remove duplicates
         Success(trees.map(TemporalParse).toSet)
       } catch {
@@ -170,12 +258,7 @@ class TemporalExpressionParser(
         // try to convert each TemporalParse to a Temporal
         val temporalTries = for (parse <- parses) yield {
           try {
-            Success(parse match {
-              case parse: PeriodParse      => parse.toPeriod
-              case parse: PeriodSetParse   => parse.toPeriodSet
-              case parse: TimeSpanParse    => parse.toTimeSpan(anchor)
-              case parse: TimeSpanSetParse => parse.toTimeSpanSet
-            })
+            Success(this.toTemporal(parse, anchor))
           } catch {
             case e @ (_: UnsupportedOperationException |
                 _: DateTimeException) =>
@@ -202,7 +285,10 @@ class TemporalExpressionParser(
           //  println(s"$timeML \t $temporal")
           // }
 
-          val finalAnswers = temporals.toSeq.sorted(this.heuristicFor(anchor))
+          val sortedAnswers = temporals.toSeq.sorted(this.heuristicFor(anchor))
+          val finalAnswers =
+            if (this.maxParses > 0) sortedAnswers.take(this.maxParses)
+            else sortedAnswers
           if (parses.size > 2){
             val finalAnswer = finalAnswers.head
             val finalMLValue = finalAnswer.timeMLValue
@@ -216,6 +302,41 @@ class TemporalExpressionParser(
     }
   }
 
+  private def toTemporal(parse: TemporalParse, anchor: TimeSpan): Temporal = {
+    parse match {
+      case parse: PeriodParse      => parse.toPeriod
+      case parse: PeriodSetParse   => parse.toPeriodSet
+      case parse: TimeSpanParse    => parse.toTimeSpan(anchor)
+      case parse: TimeSpanSetParse => parse.toTimeSpanSet
+    }
+  }
+
+  // ranks the parses of a chart entry for the beam by the heuristic for the final answers,
+  // parses that are not a Temporal on their own keep their order after those that are
+  private def beamRankFor(anchor: TimeSpan): SynchronousParser.BeamRanking = {
+    if (this.beamWidth <= 0) {
+      SynchronousParser.BySize
+    } else {
+      val heuristic = this.heuristicFor(anchor)
+      val toParse: SynchronousParser.Tree => TemporalParse = TemporalParse
+      new SynchronousParser.BeamRanking {
+        // the symbols a TemporalParse can be made from
+        override def ranks(rule: SynchronousGrammar.Rule): Boolean = rule.basicSymbol match {
+          case "[Period]" | "[PeriodSet]" | "[TimeSpan]" | "[TimeSpanSet]" => true
+          case _ => false
+        }
+
+        override def rank(trees: IndexedSeq[SynchronousParser.Tree.NonTerminal]): IndexedSeq[Int] = {
+          val temporals = trees.map(tree => Try(toTemporal(toParse(tree), anchor)).toOption)
+          val (resolved, unresolved) = trees.indices.partition(temporals(_).isDefined)
+          // the heuristic can't order every pair of Temporals
+          val ranked = Try(resolved.sortBy(temporals(_).get)(heuristic)).getOrElse(resolved)
+          ranked ++ unresolved
+        }
+      }
+    }
+  }
+
   // a heuristic for selecting between ambiguous parses
   private def heuristicFor(anchor: TimeSpan): Ordering[Temporal] = {
     val isQuarter = (timeSpan: TimeSpan) =>
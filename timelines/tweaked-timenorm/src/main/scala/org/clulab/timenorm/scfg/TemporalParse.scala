@@ -378,6 +378,7 @@ object TimeSpanParse extends CanFail("[TimeSpan]") {
       var start = getStart(timeSpan)
       var result = this.tryToCreateTimeSpan(timeSpan, start)
       while (result.isEmpty) {
+        SynchronousParser.checkInterrupted()
         start = step(start, searchUnit)
 
         // if we've satisfied the search field's base unit, start moving by range units
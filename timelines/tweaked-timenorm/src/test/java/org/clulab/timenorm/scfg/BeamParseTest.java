@@ -0,0 +1,62 @@
+package org.clulab.timenorm.scfg;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pins the values of the unbounded parser and checks the beam settings give the same values,
+ * including for text whose readings the beam used to rank by parse size alone.
+ */
+public class BeamParseTest {
+
+    static private final TimeSpan ANCHOR = TimeSpan.of( 2024, 3, 14 );
+
+    static private final String[][] VALUES = {
+            // ambiguous between M/D/Y and Y/M/D, and between the next and the previous date
+            { "3/4/21", "2021-03-04" },
+            // ambiguous between the previous and the next day of the week
+            { "Tuesday", "2024-03-12" },
+            { "the end of May", "2024-05" },
+            { "June 2nd", "2024-06-02" },
+            { "last Tuesday", "2024-03-12" },
+            { "two weeks ago", "2024-02-29" },
+            { "March 5, 2019", "2019-03-05" },
+            { "the first quarter", "2024-Q1" },
+            { "3 days", "P3D" },
+            { "since 2019", "2019" },
+            { "yesterday", "2024-03-13" },
+            { "next month", "2024-04" },
+    };
+
+    static private final int[][] BEAMS = { { 1, 0 }, { 3, 0 }, { 10, 0 }, { 0, 1 }, { 0, 2 }, { 3, 2 }, { 10, 2 }, { 1, 1 } };
+
+    @Test
+    public void pinsTheUnboundedValues() {
+        final TemporalExpressionParser parser = TemporalExpressionParser.shared( "en" );
+        for ( String[] value : VALUES ) {
+            assertEquals( value[ 0 ], value[ 1 ], parser.parse( value[ 0 ], ANCHOR ).get().timeMLValue() );
+        }
+    }
+
+    @Test
+    public void beamsGiveTheUnboundedValues() {
+        for ( int[] beam : BEAMS ) {
+            final TemporalExpressionParser parser = TemporalExpressionParser.shared( "en", beam[ 0 ], beam[ 1 ] );
+            for ( String[] value : VALUES ) {
+                assertEquals( value[ 0 ] + " with beam width " + beam[ 0 ] + " and max parses " + beam[ 1 ],
+                              value[ 1 ], parser.parse( value[ 0 ], ANCHOR ).get().timeMLValue() );
+            }
+        }
+    }
+
+    @Test
+    public void maxParsesKeepsTheBestValues() {
+        final Temporal best = TemporalExpressionParser.shared( "en" ).parse( "3/4/21", ANCHOR ).get();
+        final scala.collection.Seq<Temporal> kept
+              = TemporalExpressionParser.shared( "en", 0, 1 ).parseAll( "3/4/21", ANCHOR ).get();
+        assertEquals( 1, kept.size() );
+        assertEquals( best.timeMLValue(), kept.head().timeMLValue() );
+    }
+
+}